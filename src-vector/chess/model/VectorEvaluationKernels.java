@@ -0,0 +1,91 @@
+package chess.model;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The dense loops of the evaluation with the JDK Vector API.
+ * Needs --add-modules jdk.incubator.vector to compile and run, see README.
+ */
+public class VectorEvaluationKernels implements EvaluationKernels {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // shorts in half the bits of the ints, so they can be widened without losing lanes
+    private static final VectorSpecies<Short> HALF_SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+
+    /**
+     * Checks that the CPU has vectors of at least 256 bits (AVX2), below that the scalar loops are as fast.
+     */
+    public VectorEvaluationKernels() {
+        if (INTS.vectorBitSize() < 256 || HALF_SHORTS.length() != INTS.length())
+            throw new UnsupportedOperationException("Vectors too short: " + INTS.vectorBitSize() + " bits");
+    }
+
+    @Override
+    public int gatherSum(int[] table, int[] indices) {
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+
+        for (int bound = INTS.loopBound(indices.length); i < bound; i += INTS.length())
+            sum = sum.add(IntVector.fromArray(INTS, table, 0, indices, i));
+
+        int result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < indices.length; i++)
+            result += table[indices[i]];
+
+        return result;
+    }
+
+    @Override
+    public void add(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length) {
+        int i = 0;
+
+        for (int bound = SHORTS.loopBound(length); i < bound; i += SHORTS.length())
+            ShortVector.fromArray(SHORTS, accumulator, accumulatorOffset + i)
+                    .add(ShortVector.fromArray(SHORTS, weights, weightOffset + i))
+                    .intoArray(accumulator, accumulatorOffset + i);
+
+        for (; i < length; i++)
+            accumulator[accumulatorOffset + i] += weights[weightOffset + i];
+    }
+
+    @Override
+    public void subtract(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length) {
+        int i = 0;
+
+        for (int bound = SHORTS.loopBound(length); i < bound; i += SHORTS.length())
+            ShortVector.fromArray(SHORTS, accumulator, accumulatorOffset + i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, weightOffset + i))
+                    .intoArray(accumulator, accumulatorOffset + i);
+
+        for (; i < length; i++)
+            accumulator[accumulatorOffset + i] -= weights[weightOffset + i];
+    }
+
+    @Override
+    public int clippedDot(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length, int max) {
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+
+        for (int bound = HALF_SHORTS.loopBound(length); i < bound; i += HALF_SHORTS.length()) {
+            // clamp in 16 bit, the product needs 32 bit
+            IntVector values = (IntVector) ShortVector.fromArray(HALF_SHORTS, accumulator, accumulatorOffset + i)
+                    .max((short) 0).min((short) max).convertShape(VectorOperators.S2I, INTS, 0);
+            IntVector rowWeights = (IntVector) ShortVector.fromArray(HALF_SHORTS, weights, weightOffset + i)
+                    .convertShape(VectorOperators.S2I, INTS, 0);
+
+            sum = sum.add(values.mul(rowWeights));
+        }
+
+        int result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+            result += Math.max(0, Math.min(max, accumulator[accumulatorOffset + i])) * weights[weightOffset + i];
+
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package chess.controller;
+
+import chess.model.Engine;
+import chess.model.Model;
+import chess.model.Move;
+import chess.model.SearchResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyses the positions of an EPD or FEN file without user interface and writes one JSON line per position.
+ * The positions are searched by a pool of workers, each with its own Model. Only a few positions per worker
+ * are read ahead, so the memory use does not grow with the size of the file.
+ */
+public class BatchAnalysis {
+    private int depth;
+    private long nodeLimit;
+    private int threads;
+    private ThreadLocal<Model> models;
+    private volatile IOException writeError;
+
+    /**
+     * Sets the limits of the search and the number of workers.
+     *
+     * @param depth     the maximum depth of each search
+     * @param nodeLimit the maximum number of nodes of each search, 0 for no limit
+     * @param threads   the number of workers
+     */
+    public BatchAnalysis(int depth, long nodeLimit, int threads) {
+        this.depth = depth;
+        this.nodeLimit = nodeLimit;
+        this.threads = threads;
+
+        models = ThreadLocal.withInitial(() -> new Model("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+    }
+
+    /**
+     * Entry point of the batch mode.
+     * Usage: batch &lt;input&gt; &lt;output&gt; [depth=4] [nodes=0] [threads=&lt;cores&gt;]
+     *
+     * @param args the input file, the output file and optional limits
+     */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            System.err.println("Usage: batch <input.epd> <output.jsonl> [depth=4] [nodes=0] [threads=<cores>]");
+            System.exit(1);
+        }
+
+        int depth = 4;
+        long nodes = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+
+            switch (option[0]) {
+                case "depth": depth = Integer.parseInt(option[1]); break;
+                case "nodes": nodes = Long.parseLong(option[1]); break;
+                case "threads": threads = Integer.parseInt(option[1]); break;
+                default: System.err.println("Unknown option " + args[i]); System.exit(1);
+            }
+        }
+
+        try {
+            new BatchAnalysis(depth, nodes, threads).run(Paths.get(args[0]), Paths.get(args[1]));
+        } catch (IOException e) {
+            System.err.println("Batch analysis failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the positions line by line and writes the results as soon as they are done.
+     * The results can be in a different order than the input, each one contains its line number.
+     *
+     * @param input  the EPD or FEN file, one position per line
+     * @param output the JSON lines file
+     * @throws IOException          if a file can't be read or written
+     * @throws InterruptedException if the thread gets interrupted while waiting for the workers
+     */
+    public void run(Path input, Path output) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore readAhead = new Semaphore(threads * 4);
+
+        try (BufferedReader reader = Files.newBufferedReader(input); BufferedWriter writer = Files.newBufferedWriter(output)) {
+            String line;
+            long lineNumber = 0;
+
+            while ((line = reader.readLine()) != null && writeError == null) {
+                lineNumber++;
+
+                if (line.isBlank() || line.startsWith("#"))
+                    continue;
+
+                String position = line;
+                long number = lineNumber;
+
+                readAhead.acquire();
+                pool.execute(() -> {
+                    try {
+                        String result = analyse(number, position);
+
+                        synchronized (writer) {
+                            writer.write(result);
+                            writer.newLine();
+                        }
+                    } catch (IOException e) {
+                        writeError = e;
+                    } finally {
+                        readAhead.release();
+                    }
+                });
+            }
+
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (writeError != null)
+            throw writeError;
+    }
+
+    /**
+     * Searches one position with the Model of the current worker.
+     *
+     * @param lineNumber the line number of the position in the input file
+     * @param line       the FEN or EPD line
+     * @return           the result as a JSON object
+     */
+    private String analyse(long lineNumber, String line) {
+        String[] fields = line.trim().split("\\s+");
+        String fen = String.join(" ", Arrays.copyOf(fields, Math.min(fields.length, 4)));
+        StringBuilder json = new StringBuilder();
+        json.append("{\"line\":").append(lineNumber).append(",\"fen\":").append(Json.quote(fen));
+
+        Model model = models.get();
+
+        try {
+            model.loadFen(line);
+        } catch (IllegalArgumentException e) {
+            return json.append(",\"error\":").append(Json.quote(e.getMessage())).append('}').toString();
+        }
+
+        try {
+            Engine engine = model.getEngine();
+            engine.setDepth(depth);
+            engine.setNodeLimit(nodeLimit);
+            SearchResult result = engine.findBestMove();
+
+            json.append(",\"bestmove\":").append(result.getBestMove() == null ? "null" : Json.quote(model.getMoveName(result.getBestMove())));
+            json.append(",\"score\":").append(result.getScore());
+            json.append(",\"depth\":").append(result.getDepth());
+            json.append(",\"nodes\":").append(result.getNodes());
+            json.append(",\"pv\":[");
+
+            for (int i = 0; i < result.getPrincipalVariation().size(); i++) {
+                Move move = result.getPrincipalVariation().get(i);
+                json.append(i == 0 ? "" : ",").append(Json.quote(model.getMoveName(move)));
+            }
+
+            return json.append("]}").toString();
+        } catch (RuntimeException e) {
+            // reported like an invalid position, so every input line has its output line
+            return "{\"line\":" + lineNumber + ",\"fen\":" + Json.quote(fen) + ",\"error\":" + Json.quote(e.toString()) + '}';
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package chess.controller;
+
+import chess.model.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Creates an AppCDS archive of the classes of the engine and the tools for the installed JVM, so short-lived runs
+ * like perft, batch analysis or a UCI session load them memory mapped instead of parsing and verifying them again.
+ * A second JVM runs a short training with -XX:ArchiveClassesAtExit, which loads the classes used by the tools.
+ * The archive only works with the JVM that created it and with the classes in a jar file.
+ */
+public class ClassDataArchive {
+    private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String[] TOOLS = {"chess.controller.BatchAnalysis", "chess.controller.EvaluationTuner",
+            "chess.controller.EvaluationBenchmark", "chess.controller.GameServer", "chess.controller.SearchScheduler"};
+
+    /**
+     * Entry point of the archive mode.
+     * Usage: cds [archive=chess.jsa]
+     *
+     * @param args the optional path of the archive, "train" for the training run of the second JVM
+     */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals("train")) {
+            train();
+            return;
+        }
+
+        String archive = "chess.jsa";
+
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+
+            switch (option[0]) {
+                case "archive": archive = option[1]; break;
+                default: System.err.println("Unknown option " + arg); System.exit(1);
+            }
+        }
+
+        String classPath = System.getProperty("java.class.path");
+        for (var entry : classPath.split(File.pathSeparator))
+            if (!new File(entry).isFile()) {
+                System.err.println("AppCDS needs the classes in jar files, " + entry + " is not a file");
+                System.exit(1);
+            }
+
+        ArrayList<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        command.add("-cp");
+        command.add(classPath);
+        command.add(Runner.class.getName());
+        command.add("cds");
+        command.add("train");
+
+        try {
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+
+            if (exitCode != 0 || !new File(archive).isFile()) {
+                System.err.println("Could not create the archive, exit code " + exitCode);
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start the training: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        System.out.println("Archive written to " + archive + ", use it with -XX:SharedArchiveFile=" + archive);
+    }
+
+    /**
+     * Uses the engine like the tools do, so the classes they need are loaded and end up in the archive.
+     */
+    private static void train() {
+        Model model = new Model(START_POSITION);
+        model.getEngine().setDepth(3);
+        model.getEngine().findBestMove();
+        new Model(model).getFen();
+
+        new Perft(START_POSITION, null).divide(3, 1);
+
+        try {
+            Uci uci = new Uci(new PrintStream(OutputStream.nullOutputStream()));
+            uci.handle("uci");
+            uci.handle("position startpos moves e2e4 e7e5");
+            uci.handle("go depth 2");
+            uci.handle("stop");
+
+            // the other tools are only loaded, running them needs files or a port
+            for (var tool : TOOLS)
+                Class.forName(tool, false, ClassDataArchive.class.getClassLoader());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClassNotFoundException e) {
+            System.err.println("Missing class " + e.getMessage());
+        }
+    }
+}
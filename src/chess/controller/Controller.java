@@ -9,7 +9,7 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
 
 /**
  * Interacts between Model and View.
@@ -18,6 +18,7 @@ public class Controller {
     private Model model;
     private View view;
     private SelectedPiece selectedPiece;
+    private boolean engineThinking;
 
     final private Color whiteTile = new Color(226, 229, 240);
     final private Color whiteTileHighlighted = new Color(226, 229, 140);
@@ -25,72 +26,79 @@ public class Controller {
     final private Color blackTileHighlighted = new Color(127, 134, 247);
     final private Color lastMoved = new Color(200, 150, 29);
 
-    private BufferedImage whitePawn;
-    private HashMap<Integer, ImageIcon> pieceIcons;
-    private ImageIcon whitePawnRescaled;
-    private BufferedImage whiteRook;
-    private ImageIcon whiteRookRescaled;
-    private BufferedImage whiteKnight;
-    private ImageIcon whiteKnightRescaled;
-    private BufferedImage whiteBishop;
-    private ImageIcon whiteBishopRescaled;
-    private BufferedImage whiteQueen;
-    private ImageIcon whiteQueenRescaled;
-    private BufferedImage whiteKing;
-    private ImageIcon whiteKingRescaled;
-
-    private BufferedImage blackPawn;
-    private ImageIcon blackPawnRescaled;
-    private BufferedImage blackRook;
-    private ImageIcon blackRookRescaled;
-    private BufferedImage blackKnight;
-    private ImageIcon blackKnightRescaled;
-    private BufferedImage blackBishop;
-    private ImageIcon blackBishopRescaled;
-    private BufferedImage blackQueen;
-    private ImageIcon blackQueenRescaled;
-    private BufferedImage blackKing;
-    private ImageIcon blackKingRescaled;
+    private IconCache iconCache;
+    private ImageIcon[] pieceIcons;
+    private int iconWidth;
+    private int iconHeight;
 
     /**
-     * Loads the images. Calls methods to set the backgrounds and the icons of View.
-     * Runs View in AWT Event dispatcher thread and sets the frame to be shown.
+     * Starts loading the images. Calls methods to set the backgrounds and the icons of View.
+     * Runs View in AWT Event dispatcher thread and sets the frame to be shown, then starts the first half step.
      */
     public Controller() {
         selectedPiece = new SelectedPiece();
+        pieceIcons = new ImageIcon[12];
 
-        loadPieceImages();
+        iconCache = new IconCache(this::loadPieceImages, () -> rescaleIcons(iconWidth, iconHeight));
 
         model = new Model();
         view = new View(this);
+        model.setSearchListener(this::showProgress);
 
         setAllBackgrounds();
         setAllIcons();
 
         SwingUtilities.invokeLater(() -> {
             view.show();
+
+            // pondering or the engine only start once the frame is visible
+            model.nextHalfStep();
+
+            if (model.isEngineTurn())
+                letEngineMove();
         });
     }
 
     /**
-     * Creates a HashMap to look up icons depending on piece type and color.
+     * Starts the search of the engine in the background. The board can't be changed by the user until the move
+     * of the engine is played on the AWT event dispatcher thread.
      */
-    private void generateIconHashes() {
-        pieceIcons = new HashMap<>();
-
-        pieceIcons.put(hashColorType(ChessColor.WHITE, PieceType.PAWN), whitePawnRescaled);
-        pieceIcons.put(hashColorType(ChessColor.WHITE, PieceType.KNIGHT), whiteKnightRescaled);
-        pieceIcons.put(hashColorType(ChessColor.WHITE, PieceType.BISHOP), whiteBishopRescaled);
-        pieceIcons.put(hashColorType(ChessColor.WHITE, PieceType.ROOK), whiteRookRescaled);
-        pieceIcons.put(hashColorType(ChessColor.WHITE, PieceType.QUEEN), whiteQueenRescaled);
-        pieceIcons.put(hashColorType(ChessColor.WHITE, PieceType.KING), whiteKingRescaled);
-
-        pieceIcons.put(hashColorType(ChessColor.BLACK, PieceType.PAWN), blackPawnRescaled);
-        pieceIcons.put(hashColorType(ChessColor.BLACK, PieceType.KNIGHT), blackKnightRescaled);
-        pieceIcons.put(hashColorType(ChessColor.BLACK, PieceType.BISHOP), blackBishopRescaled);
-        pieceIcons.put(hashColorType(ChessColor.BLACK, PieceType.ROOK), blackRookRescaled);
-        pieceIcons.put(hashColorType(ChessColor.BLACK, PieceType.QUEEN), blackQueenRescaled);
-        pieceIcons.put(hashColorType(ChessColor.BLACK, PieceType.KING), blackKingRescaled);
+    private void letEngineMove() {
+        engineThinking = true;
+        view.setStatus("Thinking...");
+
+        model.searchEngineMove().whenComplete((move, exception) -> SwingUtilities.invokeLater(() -> {
+            engineThinking = false;
+
+            if (exception != null) {
+                view.displayMessage("Engine failed: " + exception.getMessage(), "Error");
+                return;
+            }
+
+            model.executeEngineMove(move);
+            setChangedIcons();
+
+            if (model.isEngineTurn())
+                letEngineMove();
+        }));
+    }
+
+    /**
+     * Shows depth, score and principal variation of a completed iteration of the engine.
+     * Gets called by the searching thread, so the text is passed to the AWT event dispatcher thread.
+     *
+     * @param lines the lines of the iteration, the best move first
+     */
+    private void showProgress(ArrayList<SearchResult> lines) {
+        SearchResult result = lines.get(0);
+        StringBuilder text = new StringBuilder("Depth ").append(result.getDepth())
+                .append("   Score ").append(String.format("%+.2f", result.getScore() / 100.0))
+                .append("   Nodes ").append(result.getNodes()).append("   PV");
+
+        for (var move : result.getPrincipalVariation())
+            text.append(' ').append(model.getMoveName(move));
+
+        SwingUtilities.invokeLater(() -> view.setStatus(text.toString()));
     }
 
     /**
@@ -99,13 +107,14 @@ public class Controller {
      * @param index the index of the tile
      */
     public void setSelectedPiece(int index) {
-        if (!model.isTileEmpty(index) && model.getColor(index) == model.getWhosTurn()) {
+        if (!engineThinking && !model.isTileEmpty(index) && model.getColor(index) == model.getWhosTurn()) {
             selectedPiece.setPiece(model.getTile(index));
             view.setIcon(index, null);
 
-            for (int i = 0; i < 64; i++)
-                if (model.hasPieceAccessToTile(selectedPiece.getX() + selectedPiece.getY() * 8, i))
-                    view.setBackground(i, getHighlightedTileColor(i));
+            for (long destinations = model.getLegalDestinations(index); destinations != 0; destinations &= destinations - 1) {
+                int i = Long.numberOfTrailingZeros(destinations);
+                view.setBackground(i, getHighlightedTileColor(i));
+            }
         } else
             selectedPiece.setPiece(null);
     }
@@ -130,15 +139,19 @@ public class Controller {
         if (selectedPiece.getPiece() == null)
             return;
 
-        for (int i = 0; i < 64; i++)
-            if (model.hasPieceAccessToTile(selectedPiece.getX() + selectedPiece.getY() * 8, i))
-                view.setBackground(i, getTileColor(i));
+        for (long destinations = model.getLegalDestinations(selectedPiece.getX() + selectedPiece.getY() * 8); destinations != 0; destinations &= destinations - 1) {
+            int i = Long.numberOfTrailingZeros(destinations);
+            view.setBackground(i, getTileColor(i));
+        }
 
         view.setIcon(selectedPiece.getY() * 8 + selectedPiece.getX(), getPieceIcon(model.getColor(selectedPiece.getX() + selectedPiece.getY() * 8), model.getTile(selectedPiece.getX() + selectedPiece.getY() * 8).getType()));
 
         if (model.movePiece(selectedPiece.getX() + selectedPiece.getY() * 8, index)) {
             model.nextHalfStep();
-            setAllIcons();
+            setChangedIcons();
+
+            if (model.isEngineTurn())
+                letEngineMove();
         }
 
         selectedPiece.setPiece(null);
@@ -165,26 +178,22 @@ public class Controller {
     }
 
     /**
-     * Loads the images for the pieces.
+     * Loads the images for the pieces. Gets called by the thread of the icon cache.
+     *
+     * @return the images, indexed like the icons
      */
-    private void loadPieceImages() {
+    private BufferedImage[] loadPieceImages() {
+        String[] names = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+        BufferedImage[] images = new BufferedImage[12];
+
         try {
-            whitePawn = ImageIO.read(new File("gfx/white_pawn.png"));
-            whiteRook = ImageIO.read(new File("gfx/white_rook.png"));
-            whiteKnight = ImageIO.read(new File("gfx/white_knight.png"));
-            whiteBishop = ImageIO.read(new File("gfx/white_bishop.png"));
-            whiteQueen = ImageIO.read(new File("gfx/white_queen.png"));
-            whiteKing = ImageIO.read(new File("gfx/white_king.png"));
-
-            blackPawn = ImageIO.read(new File("gfx/black_pawn.png"));
-            blackRook = ImageIO.read(new File("gfx/black_rook.png"));
-            blackKnight = ImageIO.read(new File("gfx/black_knight.png"));
-            blackBishop = ImageIO.read(new File("gfx/black_bishop.png"));
-            blackQueen = ImageIO.read(new File("gfx/black_queen.png"));
-            blackKing = ImageIO.read(new File("gfx/black_king.png"));
+            for (int i = 0; i < 12; i++)
+                images[i] = ImageIO.read(new File("gfx/" + (i < 6 ? "white_" : "black_") + names[i % 6] + ".png"));
         } catch (IOException e) {
-            view.displayMessage("Error opening images!", "Error");
+            System.err.println("Error opening images: " + e.getMessage());
         }
+
+        return images;
     }
 
     /**
@@ -195,8 +204,7 @@ public class Controller {
      * @return      icon of the piece
      */
     private ImageIcon getPieceIcon(ChessColor color, PieceType type) {
-        generateIconHashes();
-        return pieceIcons.get(hashColorType(color, type));
+        return pieceIcons[hashColorType(color, type)];
     }
 
     /**
@@ -227,43 +235,51 @@ public class Controller {
 
 
     /**
-     * Rescales the icons of the pieces.
+     * Rescales the icons of the pieces. Sizes used before come from the cache, new sizes first get fast icons
+     * until the smooth ones are ready.
      *
      * @param width  requested with of the icon
      * @param height requested height of the icon
      */
     public void rescaleIcons(int width, int height) {
-        whitePawnRescaled = new ImageIcon(whitePawn.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        whiteRookRescaled = new ImageIcon(whiteRook.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        whiteKnightRescaled = new ImageIcon(whiteKnight.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        whiteBishopRescaled = new ImageIcon(whiteBishop.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        whiteQueenRescaled = new ImageIcon(whiteQueen.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        whiteKingRescaled = new ImageIcon(whiteKing.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-
-        blackPawnRescaled = new ImageIcon(blackPawn.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        blackRookRescaled = new ImageIcon(blackRook.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        blackKnightRescaled = new ImageIcon(blackKnight.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        blackBishopRescaled = new ImageIcon(blackBishop.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        blackQueenRescaled = new ImageIcon(blackQueen.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-        blackKingRescaled = new ImageIcon(blackKing.getScaledInstance(width, height, Image.SCALE_DEFAULT));
+        iconWidth = width;
+        iconHeight = height;
+        pieceIcons = iconCache.getIcons(width, height);
 
         // use rescaled icons
         setAllIcons();
     }
 
-
     /**
      * Sets all icons of the board.
      */
     private void setAllIcons() {
-        for (int i = 0; i < 64; i++) {
-            Piece currentPiece = model.getTile(i);
-            ;
-            if (currentPiece == null)
-                view.setIcon(i, null);
-            else
-                view.setIcon(i, getPieceIcon(model.getColor(i), model.getTile(i).getType()));
-        }
+        model.takeChangedTiles();
+
+        for (int i = 0; i < 64; i++)
+            setIcon(i);
+    }
+
+    /**
+     * Sets the icons of the tiles changed by the last moves.
+     */
+    private void setChangedIcons() {
+        for (long tiles = model.takeChangedTiles(); tiles != 0; tiles &= tiles - 1)
+            setIcon(Long.numberOfTrailingZeros(tiles));
+    }
+
+    /**
+     * Sets the icon of a tile to the icon of the piece on it.
+     *
+     * @param index the index of the tile
+     */
+    private void setIcon(int index) {
+        Piece currentPiece = model.getTile(index);
+
+        if (currentPiece == null)
+            view.setIcon(index, null);
+        else
+            view.setIcon(index, getPieceIcon(currentPiece.getColor(), currentPiece.getType()));
     }
 
     /**
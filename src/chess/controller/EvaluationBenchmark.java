@@ -0,0 +1,250 @@
+package chess.controller;
+
+import chess.model.EvaluationKernels;
+import chess.model.Model;
+import chess.model.Move;
+import chess.model.MoveGenerator;
+import chess.model.Network;
+import chess.model.ScalarEvaluationKernels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the selected evaluation kernels compute the same results as the plain Java kernels and compares their speed.
+ * The tile features come from positions of random games, tables and weights are random. Also checks that a network with
+ * the largest allowed output weights stays within the scores of the evaluation.
+ */
+public class EvaluationBenchmark {
+    private static final int HIDDEN_SIZE = 256;
+
+    private EvaluationKernels scalar;
+    private EvaluationKernels selected;
+    private Random random;
+    private int[][] tileFeatures;
+    private int[] tileScores;
+    private short[] accumulators;
+    private short[] weights;
+
+    /**
+     * Creates the test data.
+     *
+     * @param positions the number of positions
+     * @param seed      the seed of the random games and values
+     */
+    public EvaluationBenchmark(int positions, long seed) {
+        scalar = new ScalarEvaluationKernels();
+        selected = EvaluationKernels.get();
+        random = new Random(seed);
+
+        tileFeatures = collectTileFeatures(positions);
+        tileScores = new int[13 * 64];
+        for (int i = 64; i < tileScores.length; i++)
+            tileScores[i] = random.nextInt(2001) - 1000;
+
+        accumulators = new short[positions * HIDDEN_SIZE];
+        for (int i = 0; i < accumulators.length; i++)
+            accumulators[i] = (short) (random.nextInt(601) - 200);
+
+        weights = new short[768 * HIDDEN_SIZE];
+        for (int i = 0; i < weights.length; i++)
+            weights[i] = (short) (random.nextInt(257) - 128);
+    }
+
+    /**
+     * Entry point of the benchmark mode.
+     * Usage: bench [positions=10000] [seed=1]
+     *
+     * @param args the optional number of positions and seed
+     */
+    public static void main(String... args) {
+        int positions = 10000;
+        long seed = 1;
+
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+
+            switch (option[0]) {
+                case "positions": positions = Integer.parseInt(option[1]); break;
+                case "seed": seed = Long.parseLong(option[1]); break;
+                default: System.err.println("Unknown option " + arg); System.exit(1);
+            }
+        }
+
+        EvaluationBenchmark benchmark = new EvaluationBenchmark(positions, seed);
+        System.out.println("Kernels: " + benchmark.selected.getClass().getSimpleName());
+
+        if (!benchmark.run())
+            System.exit(1);
+    }
+
+    /**
+     * Compares results and speed of every kernel, five rounds each so the JIT compiler can warm up.
+     *
+     * @return true if all results are equal
+     */
+    public boolean run() {
+        boolean equal = true;
+
+        for (int round = 1; round <= 5; round++) {
+            boolean print = round == 5;
+
+            equal &= compare("gatherSum", print, this::gatherSum);
+            equal &= compare("add/subtract", print, this::addAndSubtract);
+            equal &= compare("clippedDot", print, this::clippedDot);
+        }
+
+        equal &= checkSaturatedNetwork();
+
+        System.out.println(equal ? "All results equal" : "Results differ");
+
+        return equal;
+    }
+
+    /**
+     * Evaluates networks whose accumulators are all clipped to QA and whose output weights are as large as the
+     * constructor allows, once positive and once negative, for both players. The scores have to be clamped to
+     * MAX_SCORE, larger ones would look like tablebase or mate scores to the search.
+     *
+     * @return true if every score is exactly MAX_SCORE in absolute value
+     */
+    private boolean checkSaturatedNetwork() {
+        boolean clamped = true;
+
+        for (int sign = -1; sign <= 1; sign += 2) {
+            short[] outputWeights = new short[2 * HIDDEN_SIZE];
+            Arrays.fill(outputWeights, (short) (sign * Math.min(Short.MAX_VALUE, Integer.MAX_VALUE / ((long) Network.QA * HIDDEN_SIZE))));
+
+            short[] featureBiases = new short[HIDDEN_SIZE];
+            Arrays.fill(featureBiases, Short.MAX_VALUE);
+
+            Network network = new Network(HIDDEN_SIZE, new short[Network.FEATURES * HIDDEN_SIZE], featureBiases, outputWeights, 0);
+            short[] accumulator = new short[2 * HIDDEN_SIZE];
+            System.arraycopy(featureBiases, 0, accumulator, 0, HIDDEN_SIZE);
+            System.arraycopy(featureBiases, 0, accumulator, HIDDEN_SIZE, HIDDEN_SIZE);
+
+            clamped &= Math.abs(network.evaluate(accumulator, 0, HIDDEN_SIZE, ChessColor.WHITE)) == Network.MAX_SCORE
+                    && Math.abs(network.evaluate(accumulator, 0, HIDDEN_SIZE, ChessColor.BLACK)) == Network.MAX_SCORE;
+        }
+
+        System.out.printf("%-13s %s%n", "network", clamped ? "clamped to " + Network.MAX_SCORE : "NOT CLAMPED");
+
+        return clamped;
+    }
+
+    /**
+     * Runs a kernel with both implementations and prints the time per position in the last round.
+     *
+     * @param name   the name of the kernel
+     * @param print  true to print the result
+     * @param kernel the kernel test, returning a checksum of its results
+     * @return       true if both checksums are equal
+     */
+    private boolean compare(String name, boolean print, KernelTest kernel) {
+        long start = System.nanoTime();
+        long scalarChecksum = kernel.run(scalar);
+        long scalarTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long selectedChecksum = kernel.run(selected);
+        long selectedTime = System.nanoTime() - start;
+
+        if (print || scalarChecksum != selectedChecksum)
+            System.out.printf("%-13s %s, scalar %.1f ns, selected %.1f ns per position%n", name,
+                    scalarChecksum == selectedChecksum ? "equal" : "DIFFERENT", (double) scalarTime / tileFeatures.length,
+                    (double) selectedTime / tileFeatures.length);
+
+        return scalarChecksum == selectedChecksum;
+    }
+
+    /**
+     * Sums the tile scores of every position.
+     *
+     * @param kernels the kernels
+     * @return        the checksum
+     */
+    private long gatherSum(EvaluationKernels kernels) {
+        long checksum = 0;
+
+        for (var features : tileFeatures)
+            checksum = checksum * 31 + kernels.gatherSum(tileScores, features);
+
+        return checksum;
+    }
+
+    /**
+     * Adds and subtracts the rows of the features of every position, as a move does with the accumulators.
+     *
+     * @param kernels the kernels
+     * @return        the checksum
+     */
+    private long addAndSubtract(EvaluationKernels kernels) {
+        short[] accumulator = Arrays.copyOf(accumulators, accumulators.length);
+
+        for (int p = 0; p < tileFeatures.length; p++) {
+            kernels.add(accumulator, p * HIDDEN_SIZE, weights, (tileFeatures[p][p % 64] % 768) * HIDDEN_SIZE, HIDDEN_SIZE);
+            kernels.subtract(accumulator, p * HIDDEN_SIZE, weights, (tileFeatures[p][(p + 7) % 64] % 768) * HIDDEN_SIZE, HIDDEN_SIZE);
+        }
+
+        return Arrays.hashCode(accumulator);
+    }
+
+    /**
+     * Computes the output layer for the accumulator of every position.
+     *
+     * @param kernels the kernels
+     * @return        the checksum
+     */
+    private long clippedDot(EvaluationKernels kernels) {
+        long checksum = 0;
+
+        for (int p = 0; p < tileFeatures.length; p++)
+            checksum = checksum * 31 + kernels.clippedDot(accumulators, p * HIDDEN_SIZE, weights, (p % 768) * HIDDEN_SIZE, HIDDEN_SIZE, 255);
+
+        return checksum;
+    }
+
+    /**
+     * Plays random games and collects the tile features of the positions.
+     *
+     * @param positions the number of positions
+     * @return          the tile features of each position
+     */
+    private int[][] collectTileFeatures(int positions) {
+        int[][] features = new int[positions][];
+        Model model = new Model("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        MoveGenerator moveGenerator = model.getMoveGenerator();
+
+        for (int p = 0; p < positions; p++) {
+            moveGenerator.findMovesAndCaptures();
+            moveGenerator.removeInvalidMoves();
+
+            ArrayList<Move> legalMoves = new ArrayList<>(moveGenerator.getLastGeneratedCaptures());
+            legalMoves.addAll(moveGenerator.getLastGeneratedMoves());
+
+            if (legalMoves.isEmpty() || model.getBoard().getNoPawnMoveOrCaptureCounter() >= 100)
+                model.loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+            else
+                model.getBoard().executeMove(legalMoves.get(random.nextInt(legalMoves.size())));
+
+            features[p] = Arrays.copyOf(model.getBoard().getTileFeatures(), 64);
+        }
+
+        return features;
+    }
+
+    /**
+     * A kernel test that runs with given kernels.
+     */
+    private interface KernelTest {
+
+        /**
+         * Runs the test.
+         *
+         * @param kernels the kernels
+         * @return        a checksum of the results
+         */
+        long run(EvaluationKernels kernels);
+    }
+}
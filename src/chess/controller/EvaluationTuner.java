@@ -0,0 +1,448 @@
+package chess.controller;
+
+import chess.model.EvaluationParameters;
+import chess.model.Evaluator;
+import chess.model.Model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tunes the parameters of the Evaluator on positions labelled with the result of their game (Texel's tuning method).
+ * The loss is the mean squared error between the result and the score mapped to a winning probability.
+ * <p>
+ * The evaluation is linear in its parameters, so the coefficient of every parameter is measured once per position
+ * by changing the parameter. The optimisation then works on these coefficients with gradient descent (Adam),
+ * and the final parameters are checked with the real evaluator and written as parameter file. Loss and gradient
+ * are computed in parallel over a ForkJoinPool. The positions should be quiet, since the evaluation doesn't resolve captures.
+ */
+public class EvaluationTuner {
+    private static final Pattern RESULT = Pattern.compile("1/2-1/2|1-0|0-1|\\[(1|0|1\\.0|0\\.5|0\\.0)]");
+    private static final int DELTA = 64;
+    private static final int SPLIT_SIZE = 2048;
+
+    private ForkJoinPool pool;
+    private ThreadLocal<Model> models;
+    private ThreadLocal<Evaluator> evaluators;
+    private String[] fens;
+    private float[] results;
+    private float[] constants;
+    private int[][] indices;
+    private float[][] coefficients;
+    private double scalingFactor;
+
+    /**
+     * Creates the pool of workers. The tuning starts from the parameters of the models, so a parameter file given with
+     * the system property "chess.evalparams" can be tuned further.
+     *
+     * @param threads the number of workers
+     * @throws IllegalStateException if the models evaluate with a neural network
+     */
+    public EvaluationTuner(int threads) {
+        models = ThreadLocal.withInitial(() -> new Model("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+        evaluators = ThreadLocal.withInitial(() -> {
+            Model model = models.get();
+            Evaluator evaluator = new Evaluator(model.getBoard(), model.getEvaluator());
+            evaluator.setPawnHashTable(null);
+            return evaluator;
+        });
+
+        // the network replaces the score of the parameters, every gradient would be 0
+        if (models.get().getBoard().getNetworkAccumulator() != null)
+            throw new IllegalStateException("The tuner needs the handcrafted evaluation, start it without chess.nnue");
+
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Entry point of the tuning mode.
+     * Usage: tune &lt;positions&gt; &lt;output&gt; [iterations=300] [rate=2] [threads=&lt;cores&gt;]
+     *
+     * @param args the position file, the output file and optional settings
+     */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            System.err.println("Usage: tune <positions.epd> <parameters.json> [iterations=300] [rate=2] [threads=<cores>]");
+            System.exit(1);
+        }
+
+        int iterations = 300;
+        double rate = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+
+            switch (option[0]) {
+                case "iterations": iterations = Integer.parseInt(option[1]); break;
+                case "rate": rate = Double.parseDouble(option[1]); break;
+                case "threads": threads = Integer.parseInt(option[1]); break;
+                default: System.err.println("Unknown option " + args[i]); System.exit(1);
+            }
+        }
+
+        EvaluationTuner tuner = null;
+
+        try {
+            tuner = new EvaluationTuner(threads);
+        } catch (IllegalStateException e) {
+            System.err.println("Tuning failed: " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            tuner.loadPositions(Paths.get(args[0]));
+            int[] parameters = tuner.tune(iterations, rate);
+            EvaluationParameters.write(Paths.get(args[1]), parameters);
+        } catch (IOException e) {
+            System.err.println("Tuning failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            tuner.pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads the positions and their results and measures the coefficients of all parameters.
+     * Each line holds a FEN or EPD position and the result as 1-0, 0-1, 1/2-1/2 or [1.0], [0.5], [0.0].
+     *
+     * @param file the position file
+     * @throws IOException if the file can't be read
+     */
+    public void loadPositions(Path file) throws IOException {
+        ArrayList<String> fenList = new ArrayList<>();
+        ArrayList<Float> resultList = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = RESULT.matcher(line);
+                if (line.isBlank() || line.startsWith("#") || !matcher.find())
+                    continue;
+
+                String[] fields = line.trim().split("\\s+");
+                fenList.add(String.join(" ", Arrays.copyOf(fields, Math.min(fields.length, 4))));
+                resultList.add(parseResult(matcher.group()));
+            }
+        }
+
+        int size = fenList.size();
+        fens = fenList.toArray(new String[0]);
+        results = new float[size];
+        constants = new float[size];
+        indices = new int[size][];
+        coefficients = new float[size][];
+
+        for (int i = 0; i < size; i++)
+            results[i] = resultList.get(i);
+
+        pool.invoke(new CoefficientTask(0, size));
+        System.out.println("Loaded " + size + " positions");
+    }
+
+    /**
+     * Fits the scaling factor of the winning probability, then optimises the parameters.
+     *
+     * @param iterations the number of gradient steps
+     * @param rate       the learning rate in centipawns per step
+     * @return           the tuned parameters
+     */
+    public int[] tune(int iterations, double rate) {
+        int[] start = evaluators.get().getParameters();
+        double[] parameters = new double[start.length];
+        for (int i = 0; i < start.length; i++)
+            parameters[i] = start[i];
+
+        scalingFactor = fitScalingFactor(parameters);
+        System.out.println("Scaling factor " + scalingFactor + ", loss " + pool.invoke(new GradientTask(parameters, 0, fens.length)).loss / fens.length);
+
+        double[] firstMoment = new double[parameters.length];
+        double[] secondMoment = new double[parameters.length];
+
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            Gradient gradient = pool.invoke(new GradientTask(parameters, 0, fens.length));
+
+            for (int i = 0; i < parameters.length; i++) {
+                double g = gradient.values[i] / fens.length;
+                firstMoment[i] = 0.9 * firstMoment[i] + 0.1 * g;
+                secondMoment[i] = 0.999 * secondMoment[i] + 0.001 * g * g;
+
+                double correctedFirst = firstMoment[i] / (1 - Math.pow(0.9, iteration));
+                double correctedSecond = secondMoment[i] / (1 - Math.pow(0.999, iteration));
+                parameters[i] -= rate * correctedFirst / (Math.sqrt(correctedSecond) + 1e-8);
+            }
+
+            if (iteration % 10 == 0 || iteration == iterations)
+                System.out.println("Iteration " + iteration + ", loss " + gradient.loss / fens.length);
+        }
+
+        int[] tuned = new int[parameters.length];
+        for (int i = 0; i < parameters.length; i++)
+            tuned[i] = (int) Math.round(parameters[i]);
+
+        System.out.println("Loss with the evaluator: " + pool.invoke(new LossTask(tuned, 0, fens.length)) / fens.length);
+
+        return tuned;
+    }
+
+    /**
+     * Returns the result of a game as a number from the view of white.
+     *
+     * @param result the result as found in the position file
+     * @return       1 for a win of white, 0.5 for a draw, 0 for a win of black
+     */
+    private static float parseResult(String result) {
+        switch (result) {
+            case "1-0": case "[1]": case "[1.0]": return 1;
+            case "0-1": case "[0]": case "[0.0]": return 0;
+            default: return 0.5f;
+        }
+    }
+
+    /**
+     * Searches the scaling factor with the lowest loss for the given parameters (ternary search).
+     *
+     * @param parameters the parameters
+     * @return           the scaling factor
+     */
+    private double fitScalingFactor(double[] parameters) {
+        double low = 0.1;
+        double high = 4;
+
+        for (int i = 0; i < 40; i++) {
+            double first = low + (high - low) / 3;
+            double second = high - (high - low) / 3;
+
+            scalingFactor = first;
+            double firstLoss = pool.invoke(new GradientTask(parameters, 0, fens.length)).loss;
+            scalingFactor = second;
+            double secondLoss = pool.invoke(new GradientTask(parameters, 0, fens.length)).loss;
+
+            if (firstLoss < secondLoss)
+                high = second;
+            else
+                low = first;
+        }
+
+        return (low + high) / 2;
+    }
+
+    /**
+     * Maps a score to the expected result.
+     *
+     * @param score the score from the view of white
+     * @return      the winning probability of white
+     */
+    private double sigmoid(double score) {
+        return 1 / (1 + Math.pow(10, -scalingFactor * score / 400));
+    }
+
+    /**
+     * The sum of the losses and of the gradients of a range of positions.
+     */
+    private static class Gradient {
+        private double loss;
+        private double[] values;
+
+        /**
+         * Creates an empty gradient.
+         *
+         * @param size the number of parameters
+         */
+        private Gradient(int size) {
+            values = new double[size];
+        }
+    }
+
+    /**
+     * Measures the coefficients of the parameters for a range of positions.
+     */
+    private class CoefficientTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+
+        /**
+         * Sets the range of positions.
+         *
+         * @param from the first position
+         * @param to   the position after the last one
+         */
+        private CoefficientTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CoefficientTask(from, middle), new CoefficientTask(middle, to));
+                return;
+            }
+
+            Model model = models.get();
+            Evaluator evaluator = evaluators.get();
+            int[] parameters = evaluator.getParameters();
+            int[] positionIndices = new int[parameters.length];
+            float[] positionCoefficients = new float[parameters.length];
+
+            for (int p = from; p < to; p++) {
+                try {
+                    model.loadFen(fens[p]);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    indices[p] = new int[0];
+                    coefficients[p] = new float[0];
+                    results[p] = Float.NaN;
+                    continue;
+                }
+
+                int score = evaluator.getScore();
+                float constant = score;
+                int count = 0;
+
+                for (int i = 0; i < parameters.length; i++) {
+                    evaluator.setParameter(i, parameters[i] + DELTA);
+                    int changedScore = evaluator.getScore();
+                    evaluator.setParameter(i, parameters[i]);
+
+                    if (changedScore != score) {
+                        positionIndices[count] = i;
+                        positionCoefficients[count++] = (float) (changedScore - score) / DELTA;
+                        constant -= positionCoefficients[count - 1] * parameters[i];
+                    }
+                }
+
+                indices[p] = Arrays.copyOf(positionIndices, count);
+                coefficients[p] = Arrays.copyOf(positionCoefficients, count);
+                constants[p] = constant;
+            }
+        }
+    }
+
+    /**
+     * Computes the loss and its gradient for a range of positions with the linear evaluation.
+     */
+    private class GradientTask extends RecursiveTask<Gradient> {
+        private static final long serialVersionUID = 1L;
+
+        private double[] parameters;
+        private int from;
+        private int to;
+
+        /**
+         * Sets the parameters and the range of positions.
+         *
+         * @param parameters the parameters
+         * @param from       the first position
+         * @param to         the position after the last one
+         */
+        private GradientTask(double[] parameters, int from, int to) {
+            this.parameters = parameters;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Gradient compute() {
+            if (to - from > SPLIT_SIZE) {
+                int middle = (from + to) >>> 1;
+                GradientTask second = new GradientTask(parameters, middle, to);
+                second.fork();
+                Gradient gradient = new GradientTask(parameters, from, middle).compute();
+                Gradient secondGradient = second.join();
+
+                gradient.loss += secondGradient.loss;
+                for (int i = 0; i < parameters.length; i++)
+                    gradient.values[i] += secondGradient.values[i];
+
+                return gradient;
+            }
+
+            Gradient gradient = new Gradient(parameters.length);
+
+            for (int p = from; p < to; p++) {
+                if (Float.isNaN(results[p]))
+                    continue;
+
+                double score = constants[p];
+                for (int i = 0; i < indices[p].length; i++)
+                    score += coefficients[p][i] * parameters[indices[p][i]];
+
+                double probability = sigmoid(score);
+                double error = results[p] - probability;
+                // derivative of the loss by the score
+                double slope = -2 * error * probability * (1 - probability) * scalingFactor * Math.log(10) / 400;
+
+                gradient.loss += error * error;
+                for (int i = 0; i < indices[p].length; i++)
+                    gradient.values[indices[p][i]] += slope * coefficients[p][i];
+            }
+
+            return gradient;
+        }
+    }
+
+    /**
+     * Computes the loss of a range of positions with the evaluator itself.
+     */
+    private class LossTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private int[] parameters;
+        private int from;
+        private int to;
+
+        /**
+         * Sets the parameters and the range of positions.
+         *
+         * @param parameters the parameters
+         * @param from       the first position
+         * @param to         the position after the last one
+         */
+        private LossTask(int[] parameters, int from, int to) {
+            this.parameters = parameters;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > SPLIT_SIZE) {
+                int middle = (from + to) >>> 1;
+                LossTask second = new LossTask(parameters, middle, to);
+                second.fork();
+                return new LossTask(parameters, from, middle).compute() + second.join();
+            }
+
+            Model model = models.get();
+            Evaluator evaluator = evaluators.get();
+            evaluator.setParameters(parameters);
+            double loss = 0;
+
+            for (int p = from; p < to; p++) {
+                if (Float.isNaN(results[p]))
+                    continue;
+
+                model.loadFen(fens[p]);
+                double error = results[p] - sigmoid(evaluator.getScore());
+                loss += error * error;
+            }
+
+            return loss;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package chess.controller;
+
+import chess.model.Engine;
+import chess.model.Model;
+import chess.model.SearchContextPool;
+import chess.model.SearchResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many games in one JVM without user interface, over HTTP with JSON answers.
+ * Every game has its own board, copied from a template model, so evaluation weights, transposition table and
+ * evaluation cache are shared. Requests run on virtual threads when the JVM has them (Java 21), otherwise on
+ * a cached thread pool. Engine searches go through a SearchScheduler with one worker per core and work on a copy
+ * of the game, so reading a game is never blocked by a search. The copies are borrowed from a SearchContextPool,
+ * so a short search does not pay for creating board and engine. When too many searches wait, they get less depth
+ * and finally the server answers 503 instead of letting every client wait longer.
+ * <p>
+ * POST /games[?fen=&lt;FEN&gt;] starts a game, GET /games/&lt;id&gt; returns it, POST /games/&lt;id&gt;/move?move=e2e4
+ * plays a move, POST /games/&lt;id&gt;/engine[?depth=&lt;n&gt;&amp;priority=&lt;0-9&gt;&amp;nodes=&lt;n&gt;&amp;time=&lt;ms&gt;]
+ * lets the engine move and DELETE /games/&lt;id&gt; ends it. GET /metrics returns the queue depth and waiting times
+ * of the searches. Parameters can be sent in the query or as form body.
+ */
+public class GameServer {
+    private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private Model template;
+    private ConcurrentHashMap<String, Game> games;
+    private AtomicLong nextId;
+    private SearchScheduler scheduler;
+    private SearchContextPool contexts;
+    private ExecutorService requestExecutor;
+    private ScheduledExecutorService sweeper;
+    private HttpServer server;
+    private int depth;
+    private int maxGames;
+    private long idleMillis;
+    private long timeMillis;
+
+    /**
+     * Sets the limits of the server and creates the worker pools.
+     *
+     * @param threads      the number of engine workers
+     * @param depth        the default and maximum depth of the engine, limited to 1 to Engine.MAX_PLY
+     * @param maxGames     the maximum number of games at the same time
+     * @param idleSeconds  the time after which a game without requests is removed
+     * @param timeMillis   the default and maximum time of a search in milliseconds, 0 for no limit
+     * @param maxQueue     the number of waiting searches at which new ones are rejected
+     * @param degradeQueue the number of waiting searches per half step that new searches lose, 0 to never lose depth
+     */
+    public GameServer(int threads, int depth, int maxGames, long idleSeconds, long timeMillis, int maxQueue, int degradeQueue) {
+        this.depth = Math.max(1, Math.min(Engine.MAX_PLY, depth));
+        this.maxGames = maxGames;
+        this.timeMillis = timeMillis;
+        idleMillis = idleSeconds * 1000;
+
+        template = new Model(START_POSITION);
+        games = new ConcurrentHashMap<>();
+        nextId = new AtomicLong();
+        scheduler = new SearchScheduler(threads, maxQueue, degradeQueue);
+        contexts = new SearchContextPool(template, threads * 2);
+        requestExecutor = createRequestExecutor();
+        sweeper = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Entry point of the server mode.
+     * Usage: server [port=8080] [threads=&lt;cores&gt;] [depth=4] [maxgames=10000] [idle=1800] [time=0]
+     * [queue=&lt;threads * 64&gt;] [degrade=&lt;threads * 8&gt;]
+     *
+     * @param args the optional port, number of engine workers, maximum depth, game limit, idle time in seconds,
+     *             time of a search in milliseconds and the queue lengths for rejecting and degrading searches
+     */
+    public static void main(String... args) {
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = 4;
+        int maxGames = 10000;
+        long idle = 1800;
+        long time = 0;
+        int queue = -1;
+        int degrade = -1;
+
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+
+            switch (option[0]) {
+                case "port": port = Integer.parseInt(option[1]); break;
+                case "threads": threads = Integer.parseInt(option[1]); break;
+                case "depth": depth = Integer.parseInt(option[1]); break;
+                case "maxgames": maxGames = Integer.parseInt(option[1]); break;
+                case "idle": idle = Long.parseLong(option[1]); break;
+                case "time": time = Long.parseLong(option[1]); break;
+                case "queue": queue = Integer.parseInt(option[1]); break;
+                case "degrade": degrade = Integer.parseInt(option[1]); break;
+                default: System.err.println("Unknown option " + arg); System.exit(1);
+            }
+        }
+
+        try {
+            new GameServer(threads, depth, maxGames, idle, time, queue < 0 ? threads * 64 : queue, degrade < 0 ? threads * 8 : degrade).start(port);
+            System.out.println("Listening on port " + port);
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Starts listening and removing idle games.
+     *
+     * @param port the TCP port
+     * @throws IOException if the port can't be bound
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/games", this::handle);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(requestExecutor);
+        server.start();
+
+        sweeper.scheduleAtFixedRate(this::removeIdleGames, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops listening and shuts the worker pools down.
+     */
+    public void stop() {
+        if (server != null)
+            server.stop(0);
+
+        sweeper.shutdownNow();
+        scheduler.shutdown();
+        requestExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns an executor with a virtual thread per task if the JVM supports it, otherwise a cached thread pool.
+     * Found by reflection, so the server still compiles and runs on older Java versions.
+     *
+     * @return the executor for the requests
+     */
+    private static ExecutorService createRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Dispatches a request by method and path and sends the answer.
+     *
+     * @param exchange the request and its answer
+     * @throws IOException if the answer can't be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            HashMap<String, String> parameters = readParameters(exchange);
+            String method = exchange.getRequestMethod();
+            Game game = path.length > 2 ? games.get(path[2]) : null;
+
+            if (path.length == 2 && path[1].equals("metrics") && method.equals("GET"))
+                body = getMetrics();
+            else if (path.length < 2 || !path[1].equals("games")) {
+                status = 404;
+                body = error("Unknown request");
+            } else if (path.length == 2 && method.equals("POST")) {
+                status = 201;
+                body = createGame(parameters.getOrDefault("fen", START_POSITION));
+            } else if (path.length > 2 && game == null) {
+                status = 404;
+                body = error("Unknown game");
+            } else if (path.length == 3 && method.equals("GET"))
+                body = game.toJson();
+            else if (path.length == 3 && method.equals("DELETE")) {
+                games.remove(path[2]);
+                body = "{}";
+            } else if (path.length == 4 && path[3].equals("move") && method.equals("POST"))
+                body = game.play(parameters.getOrDefault("move", ""));
+            else if (path.length == 4 && path[3].equals("engine") && method.equals("POST"))
+                body = letEngineMove(game, Integer.parseInt(parameters.getOrDefault("depth", String.valueOf(depth))),
+                        Integer.parseInt(parameters.getOrDefault("priority", String.valueOf(SearchScheduler.NORMAL_PRIORITY))),
+                        Long.parseLong(parameters.getOrDefault("nodes", "0")),
+                        Long.parseLong(parameters.getOrDefault("time", String.valueOf(timeMillis))));
+            else {
+                status = 404;
+                body = error("Unknown request");
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (IllegalStateException e) {
+            status = 409;
+            body = error(e.getMessage());
+        } catch (TooManyGamesException | RejectedExecutionException e) {
+            status = 503;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(e.toString());
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Starts a game from a position.
+     *
+     * @param fen the FEN string of the start position
+     * @return    the game as JSON object
+     * @throws TooManyGamesException if the server hosts the maximum number of games
+     */
+    private String createGame(String fen) throws TooManyGamesException {
+        Model model = new Model(template);
+        model.loadFen(fen);
+
+        Game game = new Game(String.valueOf(nextId.incrementAndGet()), model);
+
+        // Removing games only lowers the size, so locking the adds keeps the limit.
+        synchronized (games) {
+            if (games.size() >= maxGames)
+                throw new TooManyGamesException();
+
+            games.put(game.id, game);
+        }
+
+        return game.toJson();
+    }
+
+    /**
+     * Searches on a copy of the game on an engine worker and plays the best move,
+     * unless the game changed in the meantime.
+     *
+     * @param game       the game
+     * @param depth      the depth of the search, limited to the depth of the server
+     * @param priority   the priority of the search, higher is searched earlier
+     * @param nodeLimit  the maximum number of positions, 0 for no limit
+     * @param timeMillis the time of the search including its wait in the queue, limited to the time of the server
+     * @return           the result of the search and the game as JSON object
+     */
+    private String letEngineMove(Game game, int depth, int priority, long nodeLimit, long timeMillis) {
+        Model copy;
+        long key;
+
+        synchronized (game) {
+            copy = contexts.borrow(game.model);
+            key = game.model.getBoard().getZobristKey();
+        }
+
+        if (this.timeMillis > 0)
+            timeMillis = timeMillis > 0 ? Math.min(timeMillis, this.timeMillis) : this.timeMillis;
+
+        CompletableFuture<SearchResult> search;
+        try {
+            search = scheduler.submit(copy, Math.min(depth, this.depth), priority, nodeLimit, timeMillis);
+        } catch (RejectedExecutionException e) {
+            contexts.release(copy);
+            throw e;
+        }
+
+        SearchResult result;
+
+        try {
+            result = search.get();
+        } catch (InterruptedException e) {
+            // the search could still be running on the copy, so it is not returned to the pool
+            search.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted");
+        } catch (ExecutionException e) {
+            contexts.release(copy);
+            throw new IllegalStateException("Search failed: " + e.getCause());
+        }
+
+        try {
+            return playEngineMove(game, key, copy, result);
+        } finally {
+            contexts.release(copy);
+        }
+    }
+
+    /**
+     * Plays the best move of a search unless the game changed since the search was started.
+     *
+     * @param game   the game
+     * @param key    the Zobrist key of the position of the game when the search was started
+     * @param copy   the model that was searched
+     * @param result the result of the search
+     * @return       the result of the search and the game as JSON object
+     */
+    private String playEngineMove(Game game, long key, Model copy, SearchResult result) {
+        if (result.getBestMove() == null)
+            throw new IllegalStateException("No legal move");
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"bestmove\":").append(Json.quote(copy.getMoveName(result.getBestMove())));
+        json.append(",\"score\":").append(result.getScore());
+        json.append(",\"depth\":").append(result.getDepth());
+        json.append(",\"nodes\":").append(result.getNodes());
+        json.append(",\"pv\":[");
+
+        for (int i = 0; i < result.getPrincipalVariation().size(); i++)
+            json.append(i == 0 ? "" : ",").append(Json.quote(copy.getMoveName(result.getPrincipalVariation().get(i))));
+
+        synchronized (game) {
+            if (game.model.getBoard().getZobristKey() != key)
+                throw new IllegalStateException("Game changed during the search");
+
+            return json.append("],\"game\":").append(game.play(copy.getMoveName(result.getBestMove()))).append('}').toString();
+        }
+    }
+
+    /**
+     * Returns the load of the engine workers.
+     *
+     * @return the number of games, waiting and running searches, search counts, waiting times and pooled models as JSON object
+     */
+    private String getMetrics() {
+        return "{\"games\":" + games.size() + ",\"idle_contexts\":" + contexts.getIdle() + ",\"created_contexts\":" + contexts.getCreated() + ",\"queued\":" + scheduler.getQueueDepth() + ",\"active\":" + scheduler.getActiveSearches()
+                + ",\"submitted\":" + scheduler.getSubmitted() + ",\"completed\":" + scheduler.getCompleted()
+                + ",\"rejected\":" + scheduler.getRejected() + ",\"degraded\":" + scheduler.getDegraded() + ",\"expired\":" + scheduler.getExpired()
+                + ",\"wait_ms\":{\"p50\":" + scheduler.getWaitMillis(50) + ",\"p90\":" + scheduler.getWaitMillis(90)
+                + ",\"p99\":" + scheduler.getWaitMillis(99) + ",\"max\":" + scheduler.getWaitMillis(100) + "}}";
+    }
+
+    /**
+     * Removes the games without requests for longer than the idle time.
+     */
+    private void removeIdleGames() {
+        long oldest = System.currentTimeMillis() - idleMillis;
+
+        games.values().removeIf(game -> game.lastAccess < oldest);
+    }
+
+    /**
+     * Reads the parameters of the query and of a form body.
+     *
+     * @param exchange the request
+     * @return         the parameters by name
+     * @throws IOException if the body can't be read
+     */
+    private static HashMap<String, String> readParameters(HttpExchange exchange) throws IOException {
+        HashMap<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+        for (var part : ((query == null ? "" : query) + "&" + body.trim()).split("&")) {
+            String[] pair = part.split("=", 2);
+
+            if (pair.length == 2)
+                parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8), URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Returns an error as JSON object.
+     *
+     * @param message the error message
+     * @return        the JSON object
+     */
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message == null ? "" : message) + "}";
+    }
+
+    /**
+     * One game with its own model. All access goes through the monitor of the game.
+     */
+    private static class Game {
+        private final String id;
+        private final Model model;
+        private volatile long lastAccess;
+
+        /**
+         * Sets id and model and generates the legal moves.
+         *
+         * @param id    the id of the game
+         * @param model the model with the position of the game
+         */
+        private Game(String id, Model model) {
+            this.id = id;
+            this.model = model;
+
+            model.generateLegalMoves();
+            lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * Plays a move in coordinate notation. Pawns always promote to a queen.
+         *
+         * @param name the move, for example "e2e4"
+         * @return     the game as JSON object
+         * @throws IllegalArgumentException if the move is not legal
+         */
+        private synchronized String play(String name) {
+            lastAccess = System.currentTimeMillis();
+
+            if (!model.playMove(name))
+                throw new IllegalArgumentException("Illegal move " + name);
+
+            model.generateLegalMoves();
+
+            return toJson();
+        }
+
+        /**
+         * Returns id, position, status and legal moves of the game.
+         *
+         * @return the game as JSON object
+         */
+        private synchronized String toJson() {
+            lastAccess = System.currentTimeMillis();
+
+            ArrayList<String> moves = new ArrayList<>();
+            for (var move : model.getMoveGenerator().getLastGeneratedCaptures())
+                moves.add(Json.quote(model.getMoveName(move)));
+            for (var move : model.getMoveGenerator().getLastGeneratedMoves())
+                moves.add(Json.quote(model.getMoveName(move)));
+
+            String status = "active";
+            if (moves.isEmpty())
+                status = model.getMoveGenerator().isKingInCheck() ? "checkmate" : "stalemate";
+            else if (model.getBoard().getNoPawnMoveOrCaptureCounter() >= 100 || model.getBoard().hasInsufficientMaterial())
+                status = "draw";
+
+            return "{\"id\":" + Json.quote(id) + ",\"fen\":" + Json.quote(model.getFen()) + ",\"turn\":"
+                    + Json.quote(model.getWhosTurn() == ChessColor.WHITE ? "white" : "black") + ",\"status\":" + Json.quote(status)
+                    + ",\"moves\":[" + String.join(",", moves) + "]}";
+        }
+    }
+
+    /**
+     * Thrown when a game is requested while the server hosts the maximum number of games.
+     */
+    private static class TooManyGamesException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the exception with its message.
+         */
+        private TooManyGamesException() {
+            super("Too many games");
+        }
+    }
+}
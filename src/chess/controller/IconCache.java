@@ -0,0 +1,187 @@
+package chess.controller;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the piece icons for the last used tile sizes. A size that is not cached yet first gets icons scaled with
+ * nearest neighbor, which is fast enough for every resize event, while the smooth icons are scaled on a background
+ * thread. Only the latest requested size is scaled, so a window drag does not queue up work for sizes that are gone.
+ * The images are decoded on the same thread while the rest of the application starts, the first icons wait for them.
+ */
+public class IconCache {
+    private static final int CAPACITY = 4;
+    private static final int PIECES = 12;
+
+    private Future<BufferedImage[]> images;
+    private Runnable iconsReady;
+    private LinkedHashMap<Long, ImageIcon[]> icons;
+    private ExecutorService scaler;
+    private volatile long requestedSize;
+
+    /**
+     * Creates the background thread and starts loading the images of the pieces on it.
+     *
+     * @param loader     loads the images of the pieces, indexed like the icons, on the background thread
+     * @param iconsReady called on the AWT event dispatcher thread when smooth icons for the requested size are ready
+     */
+    public IconCache(Supplier<BufferedImage[]> loader, Runnable iconsReady) {
+        this.iconsReady = iconsReady;
+
+        // the least recently used size gets removed first
+        icons = new LinkedHashMap<>(CAPACITY * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ImageIcon[]> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+
+        scaler = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "icon-scaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        images = scaler.submit(() -> convert(loader.get()));
+    }
+
+    /**
+     * Draws the images again in the format that Java2D draws fastest, since they are scaled for every size.
+     *
+     * @param loaded the loaded images
+     * @return       the converted images
+     */
+    private static BufferedImage[] convert(BufferedImage[] loaded) {
+        BufferedImage[] converted = new BufferedImage[loaded.length];
+
+        for (int i = 0; i < loaded.length; i++)
+            if (loaded[i] != null)
+                converted[i] = scale(loaded[i], loaded[i].getWidth(), loaded[i].getHeight(), RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+        return converted;
+    }
+
+    /**
+     * Returns the images of the pieces, waiting until they are loaded.
+     *
+     * @return the images, all null if they could not be loaded
+     */
+    private BufferedImage[] getImages() {
+        try {
+            return images.get();
+        } catch (ExecutionException e) {
+            System.err.println("Could not load images: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return new BufferedImage[PIECES];
+    }
+
+    /**
+     * Returns the icons for a tile size. Has to be called on the AWT event dispatcher thread.
+     * If the size is not cached, fast icons are returned and smooth icons are scaled in the background.
+     *
+     * @param width  the width of the icons
+     * @param height the height of the icons
+     * @return       the icons of the pieces
+     */
+    public ImageIcon[] getIcons(int width, int height) {
+        long size = (long) width << 32 | height;
+        ImageIcon[] cached = icons.get(size);
+
+        if (cached != null) {
+            requestedSize = size;
+            return cached;
+        }
+
+        if (requestedSize != size) {
+            requestedSize = size;
+            scaler.execute(() -> scaleSmooth(width, height, size));
+        }
+
+        return scale(width, height, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    }
+
+    /**
+     * Scales the smooth icons if the size is still requested and hands them to the AWT event dispatcher thread.
+     *
+     * @param width  the width of the icons
+     * @param height the height of the icons
+     * @param size   the key of the size
+     */
+    private void scaleSmooth(int width, int height, long size) {
+        if (requestedSize != size)
+            return;
+
+        ImageIcon[] smooth = scale(width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+
+        SwingUtilities.invokeLater(() -> {
+            icons.put(size, smooth);
+
+            if (requestedSize == size)
+                iconsReady.run();
+        });
+    }
+
+    /**
+     * Scales all images to the given size.
+     *
+     * @param width         the width of the icons
+     * @param height        the height of the icons
+     * @param interpolation the interpolation hint of Graphics2D
+     * @return              the icons
+     */
+    private ImageIcon[] scale(int width, int height, Object interpolation) {
+        BufferedImage[] images = getImages();
+        ImageIcon[] scaled = new ImageIcon[images.length];
+
+        for (int i = 0; i < images.length; i++)
+            if (images[i] != null)
+                scaled[i] = new ImageIcon(scale(images[i], Math.max(1, width), Math.max(1, height), interpolation));
+
+        return scaled;
+    }
+
+    /**
+     * Scales an image. Smooth scaling halves the image step by step first, since bicubic interpolation only looks at
+     * neighbouring pixels and would skip most of them when shrinking by a large factor.
+     *
+     * @param image         the image
+     * @param width         the width of the result
+     * @param height        the height of the result
+     * @param interpolation the interpolation hint of Graphics2D
+     * @return              the scaled image
+     */
+    private static BufferedImage scale(BufferedImage image, int width, int height, Object interpolation) {
+        BufferedImage result = image;
+
+        do {
+            int stepWidth = width;
+            int stepHeight = height;
+
+            if (interpolation != RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
+                stepWidth = Math.max(width, result.getWidth() / 2);
+                stepHeight = Math.max(height, result.getHeight() / 2);
+            }
+
+            BufferedImage step = new BufferedImage(stepWidth, stepHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g.drawImage(result, 0, 0, stepWidth, stepHeight, null);
+            g.dispose();
+
+            result = step;
+        } while (result.getWidth() != width || result.getHeight() != height);
+
+        return result;
+    }
+}
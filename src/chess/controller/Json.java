@@ -0,0 +1,46 @@
+package chess.controller;
+
+/**
+ * Writes the values of the JSON output of the tools.
+ */
+final class Json {
+
+    /**
+     * Not used, all methods are static.
+     */
+    private Json() {
+    }
+
+    /**
+     * Returns the text as a JSON string. Quotes, backslashes and control characters are escaped,
+     * so texts from input files like tab separated EPD lines keep the output valid.
+     *
+     * @param text the text
+     * @return     the quoted and escaped text, null if the text is null
+     */
+    static String quote(String text) {
+        if (text == null)
+            return "null";
+
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c));
+                    else
+                        json.append(c);
+            }
+        }
+
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,552 @@
+package chess.controller;
+
+import chess.model.Engine;
+import chess.model.Model;
+import chess.model.MoveGenerator;
+import chess.model.SearchResult;
+import chess.model.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays two engine configurations against each other to measure whether a change makes the engine stronger.
+ * Every opening is played twice with swapped colors, the games run in parallel on a pool of workers and every game
+ * has its own boards and transposition tables. Games are adjudicated by the rules, by agreed scores and by a move limit.
+ * <p>
+ * After every game a sequential probability ratio test (SPRT) compares the hypotheses that the first configuration
+ * is elo0 or elo1 Elo stronger. The match stops as soon as one of them is accepted with the error rates alpha and beta,
+ * or when all games are played.
+ */
+public class Match {
+    private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private Side[] sides;
+    private ArrayList<String> openings;
+    private int games;
+    private int threads;
+    private long baseMillis;
+    private long incrementMillis;
+    private int maxMoves;
+    private int resignScore;
+    private int resignMoves;
+    private int drawScore;
+    private int drawMoves;
+    private int drawStart;
+    private double elo0;
+    private double elo1;
+    private double lowerBound;
+    private double upperBound;
+    private int wins;
+    private int losses;
+    private int draws;
+    private AtomicInteger nextGame;
+    private volatile boolean decided;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Creates a match with the default settings and the start position as only opening.
+     */
+    public Match() {
+        sides = new Side[] {new Side("a"), new Side("b")};
+        openings = new ArrayList<>();
+        games = 1000;
+        threads = Runtime.getRuntime().availableProcessors();
+        maxMoves = 300;
+        resignScore = 1000;
+        resignMoves = 6;
+        drawScore = 10;
+        drawMoves = 12;
+        drawStart = 40;
+        elo0 = 0;
+        elo1 = 5;
+        setErrorRates(0.05, 0.05);
+        nextGame = new AtomicInteger();
+    }
+
+    /**
+     * Entry point of the match mode.
+     * Usage: match [openings=&lt;file&gt;] [games=1000] [threads=&lt;cores&gt;] [tc=&lt;base ms&gt;+&lt;increment ms&gt;]
+     * [maxmoves=300] [resign=1000] [resignmoves=6] [draw=10] [drawmoves=12] [drawstart=40]
+     * [elo0=0] [elo1=5] [alpha=0.05] [beta=0.05] [a.&lt;option&gt;=&lt;value&gt;...] [b.&lt;option&gt;=&lt;value&gt;...]
+     * Options of a configuration are depth, nodes, movetime (ms), hash (MB), seed and the files evalparams and nnue.
+     *
+     * @param args the settings of the match and of both configurations
+     */
+    public static void main(String... args) {
+        Match match = new Match();
+        double alpha = 0.05;
+        double beta = 0.05;
+
+        try {
+            for (var arg : args) {
+                String[] option = arg.split("=", 2);
+                if (option.length < 2)
+                    throw new IllegalArgumentException("Unknown option " + arg);
+
+                if (option[0].startsWith("a.") || option[0].startsWith("b."))
+                    match.sides[option[0].charAt(0) - 'a'].setOption(option[0].substring(2), option[1]);
+                else
+                    switch (option[0]) {
+                        case "openings": match.readOpenings(Paths.get(option[1])); break;
+                        case "games": match.games = Integer.parseInt(option[1]); break;
+                        case "threads": match.threads = Integer.parseInt(option[1]); break;
+                        case "tc": match.setTimeControl(option[1]); break;
+                        case "maxmoves": match.maxMoves = Integer.parseInt(option[1]); break;
+                        case "resign": match.resignScore = Integer.parseInt(option[1]); break;
+                        case "resignmoves": match.resignMoves = Integer.parseInt(option[1]); break;
+                        case "draw": match.drawScore = Integer.parseInt(option[1]); break;
+                        case "drawmoves": match.drawMoves = Integer.parseInt(option[1]); break;
+                        case "drawstart": match.drawStart = Integer.parseInt(option[1]); break;
+                        case "elo0": match.elo0 = Double.parseDouble(option[1]); break;
+                        case "elo1": match.elo1 = Double.parseDouble(option[1]); break;
+                        case "alpha": alpha = Double.parseDouble(option[1]); break;
+                        case "beta": beta = Double.parseDouble(option[1]); break;
+                        default: throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+            }
+
+            match.setErrorRates(alpha, beta);
+            match.run();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Match failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the openings, one FEN or EPD position per line.
+     *
+     * @param file the file with the openings
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if a line is not a valid position
+     */
+    public void readOpenings(Path file) throws IOException {
+        Model check = new Model(START_POSITION);
+
+        for (var line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#"))
+                continue;
+
+            check.loadFen(line);
+            openings.add(line.trim());
+        }
+    }
+
+    /**
+     * Sets the clock of both players.
+     *
+     * @param timeControl the base time and the increment per move in milliseconds, for example "10000+100"
+     */
+    public void setTimeControl(String timeControl) {
+        String[] times = timeControl.split("\\+", 2);
+
+        baseMillis = Long.parseLong(times[0]);
+        incrementMillis = times.length > 1 ? Long.parseLong(times[1]) : 0;
+    }
+
+    /**
+     * Sets the error rates of the test, which define the bounds of the log likelihood ratio.
+     *
+     * @param alpha the probability to accept elo1 although elo0 is true
+     * @param beta  the probability to accept elo0 although elo1 is true
+     */
+    public void setErrorRates(double alpha, double beta) {
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Plays the games on the workers until all are played or the test is decided, then prints the result.
+     *
+     * @throws InterruptedException if the thread gets interrupted while waiting for the games
+     */
+    public void run() throws InterruptedException {
+        if (openings.isEmpty())
+            openings.add(START_POSITION);
+
+        System.out.println("Match " + sides[0] + " vs " + sides[1] + ", " + games + " games from " + openings.size()
+                + " openings, SPRT elo0=" + elo0 + " elo1=" + elo1 + String.format(" bounds [%.2f, %.2f]", lowerBound, upperBound));
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "match-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+        try {
+            for (int i = 0; i < threads; i++)
+                workers.execute(this::playGames);
+
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } finally {
+            workers.shutdownNow();
+            timer.shutdownNow();
+        }
+
+        printSummary();
+    }
+
+    /**
+     * Plays the next games until all are played or the test is decided. Runs on every worker.
+     */
+    private void playGames() {
+        int number;
+
+        while (!decided && (number = nextGame.getAndIncrement()) < games) {
+            try {
+                Side white = sides[number % 2];
+                Side black = sides[1 - number % 2];
+                Outcome outcome = playGame(openings.get(number / 2 % openings.size()), white, black);
+
+                if (outcome != null)
+                    record(number + 1, white, outcome);
+            } catch (RuntimeException e) {
+                System.err.println("Game " + (number + 1) + " failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Plays one game from an opening.
+     *
+     * @param opening the FEN of the start position
+     * @param white   the configuration that plays white
+     * @param black   the configuration that plays black
+     * @return        the result, null if the game was aborted because the test is decided
+     */
+    private Outcome playGame(String opening, Side white, Side black) {
+        Model[] models = {white.createModel(opening, baseMillis > 0), black.createModel(opening, baseMillis > 0)};
+        Side[] players = {white, black};
+        long[] clocks = {baseMillis, baseMillis};
+        HashMap<Long, Integer> positions = new HashMap<>();
+        int resignCount = 0;
+        int resignSign = 0;
+        int drawCount = 0;
+
+        for (int ply = 0; ; ply++) {
+            if (decided)
+                return null;
+
+            int color = models[0].getWhosTurn() == ChessColor.WHITE ? 0 : 1;
+            Model mover = models[color];
+            MoveGenerator moveGenerator = mover.getMoveGenerator();
+            mover.generateLegalMoves();
+
+            if (moveGenerator.getLastGeneratedMoves().isEmpty() && moveGenerator.getLastGeneratedCaptures().isEmpty())
+                return moveGenerator.isKingInCheck() ? new Outcome(color == 0 ? -1 : 1, "checkmate") : new Outcome(0, "stalemate");
+            if (mover.getBoard().getNoPawnMoveOrCaptureCounter() >= 100)
+                return new Outcome(0, "fifty moves");
+            if (mover.getBoard().hasInsufficientMaterial())
+                return new Outcome(0, "insufficient material");
+            if (positions.merge(mover.getBoard().getZobristKey(), 1, Integer::sum) >= 3)
+                return new Outcome(0, "repetition");
+            if (ply >= 2 * maxMoves)
+                return new Outcome(0, "move limit");
+
+            long start = System.nanoTime();
+            SearchResult result = search(mover.getEngine(), players[color], clocks[color]);
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            if (baseMillis > 0) {
+                clocks[color] -= millis;
+                if (clocks[color] < 0)
+                    return new Outcome(color == 0 ? -1 : 1, "time forfeit");
+
+                clocks[color] += incrementMillis;
+            }
+
+            // both players have to agree on the score for a number of moves in a row, the scores are from the view of white
+            int score = result.getScore();
+            if (resignScore > 0 && Math.abs(score) >= resignScore)
+                resignCount = Integer.signum(score) == resignSign ? resignCount + 1 : 1;
+            else
+                resignCount = 0;
+
+            resignSign = Integer.signum(score);
+            drawCount = drawScore >= 0 && ply >= 2 * drawStart && Math.abs(score) <= drawScore ? drawCount + 1 : 0;
+
+            if (resignCount >= resignMoves)
+                return new Outcome(resignSign, "adjudicated win");
+            if (drawCount >= drawMoves)
+                return new Outcome(0, "adjudicated draw");
+
+            String move = mover.getMoveName(result.getBestMove());
+            if (!models[0].playMove(move) || !models[1].playMove(move))
+                throw new IllegalStateException("Illegal engine move " + move + " in " + mover.getFen());
+        }
+    }
+
+    /**
+     * Searches the position with the limits of a configuration and the clock of the player.
+     *
+     * @param engine the engine of the player
+     * @param side   the configuration of the player
+     * @param clock  the remaining time of the player in milliseconds
+     * @return       the result of the search
+     */
+    private SearchResult search(Engine engine, Side side, long clock) {
+        long moveTime = side.moveTime;
+
+        // like the UCI mode, a small part of the remaining time is used
+        if (baseMillis > 0) {
+            long budget = Math.max(10, Math.min(clock / 30 + incrementMillis / 2, clock - 50));
+            moveTime = moveTime > 0 ? Math.min(moveTime, budget) : budget;
+        }
+
+        // repeated, so a timeout right at the start of the search is not lost
+        ScheduledFuture<?> timeout = moveTime > 0 ? timer.scheduleAtFixedRate(engine::stop, moveTime, 10, TimeUnit.MILLISECONDS) : null;
+
+        try {
+            return engine.findBestMove();
+        } finally {
+            if (timeout != null)
+                timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Counts the result of a game for the first configuration, prints it and checks whether the test is decided.
+     *
+     * @param number  the number of the game
+     * @param white   the configuration that played white
+     * @param outcome the result of the game
+     */
+    private synchronized void record(int number, Side white, Outcome outcome) {
+        if (decided)
+            return;
+
+        int result = white == sides[0] ? outcome.result : -outcome.result;
+
+        if (result > 0)
+            wins++;
+        else if (result < 0)
+            losses++;
+        else
+            draws++;
+
+        double llr = getLogLikelihoodRatio();
+        System.out.println(String.format("Game %d: %s %s (%s)   %s   LLR %.2f", number, white == sides[0] ? sides[0] + "-" + sides[1] : sides[1] + "-" + sides[0],
+                outcome.result > 0 ? "1-0" : outcome.result < 0 ? "0-1" : "1/2-1/2", outcome.reason, getScoreText(), llr));
+
+        if (llr <= lowerBound || llr >= upperBound)
+            decided = true;
+    }
+
+    /**
+     * Prints the score, the Elo difference and the decision of the test.
+     */
+    private synchronized void printSummary() {
+        double llr = getLogLikelihoodRatio();
+
+        System.out.println();
+        System.out.println(sides[0] + " vs " + sides[1] + ": " + getScoreText());
+        System.out.println(String.format("LLR %.2f [%.2f, %.2f]", llr, lowerBound, upperBound));
+
+        if (llr >= upperBound)
+            System.out.println("H1 accepted: " + sides[0] + " is at least " + elo1 + " Elo stronger");
+        else if (llr <= lowerBound)
+            System.out.println("H0 accepted: " + sides[0] + " is not " + elo1 + " Elo stronger");
+        else
+            System.out.println("No decision after " + (wins + losses + draws) + " games");
+    }
+
+    /**
+     * Returns wins, losses and draws of the first configuration with the Elo difference and its 95% interval.
+     *
+     * @return the score as text
+     */
+    private String getScoreText() {
+        int count = wins + losses + draws;
+        if (count == 0)
+            return "no games";
+
+        double score = (wins + draws / 2.0) / count;
+        double margin = 1.96 * Math.sqrt(getVariance(wins, losses, draws) / count);
+
+        return String.format("W %d L %d D %d   Elo %.1f [%.1f, %.1f]", wins, losses, draws,
+                getElo(score), getElo(score - margin), getElo(score + margin));
+    }
+
+    /**
+     * Returns the log likelihood ratio of the hypotheses elo1 against elo0, with the normal approximation of the
+     * distribution of the score of a game.
+     *
+     * @return the log likelihood ratio
+     */
+    private double getLogLikelihoodRatio() {
+        double win = wins;
+        double loss = losses;
+        double draw = draws;
+
+        // without one of the results the variance is too small or 0, half a game of each keeps the test going
+        if (win == 0 || loss == 0 || draw == 0) {
+            win += 0.5;
+            loss += 0.5;
+            draw += 0.5;
+        }
+
+        double count = win + loss + draw;
+        double score = (win + draw / 2) / count;
+        double score0 = getExpectedScore(elo0);
+        double score1 = getExpectedScore(elo1);
+
+        return (score1 - score0) * (2 * score - score0 - score1) * count / (2 * getVariance(win, loss, draw));
+    }
+
+    /**
+     * Returns the variance of the score of one game.
+     *
+     * @param win  the number of wins
+     * @param loss the number of losses
+     * @param draw the number of draws
+     * @return     the variance
+     */
+    private static double getVariance(double win, double loss, double draw) {
+        double count = win + loss + draw;
+        double score = (win + draw / 2) / count;
+
+        return (win * (1 - score) * (1 - score) + draw * (0.5 - score) * (0.5 - score) + loss * score * score) / count;
+    }
+
+    /**
+     * Returns the expected score of a player with an Elo advantage.
+     *
+     * @param elo the Elo difference
+     * @return    the expected score, 0 to 1
+     */
+    private static double getExpectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Returns the Elo difference of an expected score.
+     *
+     * @param score the score, limited to 0.001 - 0.999
+     * @return      the Elo difference
+     */
+    private static double getElo(double score) {
+        score = Math.max(0.001, Math.min(0.999, score));
+
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * One engine configuration. Its template model holds the evaluation, every game gets a copy.
+     */
+    private static class Side {
+        private final String name;
+        private final Model template;
+        private int depth;
+        private long nodes;
+        private long moveTime;
+        private int hash;
+
+        /**
+         * Creates the configuration with the default limits.
+         *
+         * @param name the name of the configuration
+         */
+        private Side(String name) {
+            this.name = name;
+
+            template = new Model(START_POSITION);
+            hash = Integer.getInteger("chess.hash", 16);
+        }
+
+        /**
+         * Sets an option of the configuration.
+         *
+         * @param option the name of the option
+         * @param value  the value of the option
+         * @throws IOException if a file of the option can't be read
+         */
+        private void setOption(String option, String value) throws IOException {
+            switch (option) {
+                case "depth": depth = Math.min(Engine.MAX_PLY, Integer.parseInt(value)); break;
+                case "nodes": nodes = Long.parseLong(value); break;
+                case "movetime": moveTime = Long.parseLong(value); break;
+                case "hash": hash = Integer.parseInt(value); break;
+                case "evalparams": template.loadEvaluationParameters(Paths.get(value)); break;
+                case "nnue": template.loadNetwork(Paths.get(value)); break;
+                case "seed": setSeed(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + name + "." + option);
+            }
+        }
+
+        /**
+         * Seeds or disables the choice between moves with the same score.
+         *
+         * @param seed the seed, "none" to always play the first of the best moves
+         */
+        private void setSeed(String seed) {
+            if (seed.equals("none"))
+                template.getEngine().setRandom(null);
+            else
+                template.getEngine().setSeed(Long.parseLong(seed));
+        }
+
+        /**
+         * Creates the model of a game, with its own transposition table, so the games don't influence each other.
+         * Without a depth option the search is limited by the clock or, without limits, to depth 4.
+         *
+         * @param opening the FEN of the start position
+         * @param timed   true if the game has a clock
+         * @return        the model
+         */
+        private Model createModel(String opening, boolean timed) {
+            Model model = new Model(template);
+            model.loadFen(opening);
+
+            Engine engine = model.getEngine();
+            engine.setDepth(depth > 0 ? depth : timed || moveTime > 0 || nodes > 0 ? Engine.MAX_PLY : 4);
+            engine.setNodeLimit(nodes);
+            engine.setTranspositionTable(hash > 0 ? new TranspositionTable(hash) : null);
+
+            return model;
+        }
+
+        /**
+         * Returns the name of the configuration.
+         *
+         * @return the name
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The result of a game from the view of white, with the reason why it ended.
+     */
+    private static class Outcome {
+        private final int result;
+        private final String reason;
+
+        /**
+         * Sets result and reason.
+         *
+         * @param result 1 if white won, -1 if black won, 0 for a draw
+         * @param reason the reason why the game ended
+         */
+        private Outcome(int result, String reason) {
+            this.result = result;
+            this.reason = reason;
+        }
+    }
+}
@@ -62,4 +62,11 @@ public class MoveHistory {
     public void removeMoveFromHistory(Move move) {
         moveHistory.remove(move);
     }
+
+    /**
+     * Removes all moves from the history.
+     */
+    public void clear() {
+        moveHistory.clear();
+    }
 }
@@ -0,0 +1,268 @@
+package chess.controller;
+
+import chess.model.Board;
+import chess.model.Model;
+import chess.model.Move;
+import chess.model.MoveGenerator;
+import chess.model.PerftTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the move tree up to a given depth (perft) to validate the move generation.
+ * The moves of the root are split across a ForkJoinPool, each task works on its own copy of the board.
+ * Optionally the tasks share a hash table, so transpositions are only counted once.
+ */
+public class Perft {
+    // positions with their known counts from depth 1 on, checked by "perft check"; pawns only promote to a queen,
+    // so the last count of the second position is 11,379 underpromotions below the 4,085,603 of other engines
+    private static final String[] CHECK_POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    };
+    private static final long[][] CHECK_COUNTS = {
+            {20, 400, 8902, 197281, 4865609},
+            {48, 2039, 97862, 4074224},
+            {14, 191, 2812, 43238, 674624}
+    };
+
+    private String fen;
+    private PerftTable table;
+
+    /**
+     * Sets the position and the optional hash table.
+     *
+     * @param fen   the FEN string of the root position
+     * @param table the shared hash table, null to count every transposition again
+     */
+    public Perft(String fen, PerftTable table) {
+        this.fen = fen;
+        this.table = table;
+    }
+
+    /**
+     * Entry point of the perft mode.
+     * Usage: perft [depth=5] [threads=&lt;cores&gt;] [hash=&lt;megabytes&gt;] [FEN]<br>
+     * or: perft check [threads=&lt;cores&gt;] [hash=&lt;megabytes&gt;] to compare known positions with their counts
+     *
+     * @param args the optional depth, number of threads, hash size and position
+     */
+    public static void main(String... args) {
+        int depth = 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hash = 0;
+        boolean check = false;
+        StringBuilder fen = new StringBuilder();
+
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+
+            switch (option[0]) {
+                case "depth": depth = Integer.parseInt(option[1]); break;
+                case "threads": threads = Integer.parseInt(option[1]); break;
+                case "hash": hash = Integer.parseInt(option[1]); break;
+                case "check": check = true; break;
+                default: fen.append(arg).append(' ');
+            }
+        }
+
+        if (check) {
+            System.exit(check(threads, hash) ? 0 : 1);
+            return;
+        }
+
+        if (depth < 1) {
+            System.err.println("Usage: perft [depth=5] [threads=<cores>] [hash=<megabytes>] [FEN], the depth has to be at least 1");
+            System.exit(1);
+        }
+
+        if (fen.length() == 0)
+            fen.append("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+
+        long start = System.nanoTime();
+        LinkedHashMap<String, Long> counts = new Perft(fen.toString(), hash > 0 ? new PerftTable(hash) : null).divide(depth, threads);
+        long total = 0;
+
+        for (var entry : counts.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+            total += entry.getValue();
+        }
+
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.out.println();
+        System.out.println("Nodes: " + total);
+        System.out.println("Time: " + millis + " ms (" + total * 1000 / millis + " nodes/s)");
+    }
+
+    /**
+     * Counts the known positions to every depth with a known count and prints the differences.
+     *
+     * @param threads the number of threads
+     * @param hash    the size of the hash table in megabytes, 0 for none
+     * @return        true if all counts match
+     */
+    private static boolean check(int threads, int hash) {
+        boolean passed = true;
+
+        for (int i = 0; i < CHECK_POSITIONS.length; i++)
+            for (int depth = 1; depth <= CHECK_COUNTS[i].length; depth++) {
+                long nodes = new Perft(CHECK_POSITIONS[i], hash > 0 ? new PerftTable(hash) : null).count(depth, threads);
+                long expected = CHECK_COUNTS[i][depth - 1];
+
+                System.out.println((nodes == expected ? "ok   " : "FAIL ") + CHECK_POSITIONS[i] + " depth " + depth + ": " + nodes
+                        + (nodes == expected ? "" : ", expected " + expected));
+                passed &= nodes == expected;
+            }
+
+        return passed;
+    }
+
+    /**
+     * Returns the number of leaf nodes at the given depth.
+     *
+     * @param depth   the depth, at least 1
+     * @param threads the number of threads
+     * @return        the number of leaf nodes
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public long count(int depth, int threads) {
+        long total = 0;
+
+        for (var count : divide(depth, threads).values())
+            total += count;
+
+        return total;
+    }
+
+    /**
+     * Returns the number of leaf nodes at the given depth for each legal move of the root.
+     *
+     * @param depth   the depth, at least 1
+     * @param threads the number of threads
+     * @return        the number of leaf nodes by move name, in the order the moves were generated
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public LinkedHashMap<String, Long> divide(int depth, int threads) {
+        if (depth < 1)
+            throw new IllegalArgumentException("Depth has to be at least 1, not " + depth);
+
+        Model root = new Model(fen);
+        ArrayList<Move> rootMoves = getLegalMoves(root.getMoveGenerator());
+        ArrayList<RootMoveTask> tasks = new ArrayList<>();
+        LinkedHashMap<String, Long> counts = new LinkedHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            for (var move : rootMoves) {
+                RootMoveTask task = new RootMoveTask(new Model(root), move.getStart(), move.getDestination(), depth);
+                tasks.add(task);
+                pool.execute(task);
+            }
+
+            for (int i = 0; i < rootMoves.size(); i++)
+                counts.put(root.getMoveName(rootMoves.get(i)), tasks.get(i).join());
+        } finally {
+            pool.shutdown();
+        }
+
+        return counts;
+    }
+
+    /**
+     * Counts the leaf nodes below the current position of the board.
+     *
+     * @param board         the board
+     * @param moveGenerator the move generator of the board
+     * @param depth         the remaining depth
+     * @return              the number of leaf nodes
+     */
+    private long count(Board board, MoveGenerator moveGenerator, int depth) {
+        if (depth <= 0)
+            return 1;
+
+        long key = table == null ? 0 : board.getZobristKey();
+
+        if (table != null) {
+            long stored = table.get(key, depth);
+            if (stored >= 0)
+                return stored;
+        }
+
+        ArrayList<Move> legalMoves = getLegalMoves(moveGenerator);
+        long nodes = 0;
+
+        if (depth == 1)
+            nodes = legalMoves.size();
+        else
+            for (var move : legalMoves) {
+                board.executeMove(move);
+                nodes += count(board, moveGenerator, depth - 1);
+                board.reverseMove(move);
+            }
+
+        if (table != null)
+            table.put(key, depth, nodes);
+
+        return nodes;
+    }
+
+    /**
+     * Generates the legal moves of the player whose turn it is.
+     *
+     * @param moveGenerator the move generator of the board
+     * @return              a new list with captures and moves
+     */
+    private ArrayList<Move> getLegalMoves(MoveGenerator moveGenerator) {
+        moveGenerator.findMovesAndCaptures();
+        moveGenerator.removeInvalidMoves();
+
+        ArrayList<Move> legalMoves = new ArrayList<>(moveGenerator.getLastGeneratedCaptures());
+        legalMoves.addAll(moveGenerator.getLastGeneratedMoves());
+
+        return legalMoves;
+    }
+
+    /**
+     * Counts the leaf nodes below one move of the root on a board of its own.
+     */
+    private class RootMoveTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private Model model;
+        private int start;
+        private int destination;
+        private int depth;
+
+        /**
+         * Sets the copy of the root position, the move and the depth.
+         *
+         * @param model       the copy of the root position
+         * @param start       the start tile of the root move
+         * @param destination the destination of the root move
+         * @param depth       the depth counted from the root
+         */
+        private RootMoveTask(Model model, int start, int destination, int depth) {
+            this.model = model;
+            this.start = start;
+            this.destination = destination;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Board board = model.getBoard();
+
+            for (var move : getLegalMoves(model.getMoveGenerator()))
+                if (move.getStart() == start && move.getDestination() == destination) {
+                    board.executeMove(move);
+                    return count(board, model.getMoveGenerator(), depth - 1);
+                }
+
+            throw new IllegalStateException("Root move not found");
+        }
+    }
+}
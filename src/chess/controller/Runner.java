@@ -1,16 +1,35 @@
 package chess.controller;
 
+import java.util.Arrays;
+
 /**
  * Main class.
  */
 public class Runner {
 
     /**
-     * Entry point.
+     * Entry point. Starts the user interface, or one of the tools if the first argument is "batch", "perft", "tune", "bench", "uci", "server", "cds" or "match".
      *
-     * @param args an array of command-line arguments for the application, not used
+     * @param args an array of command-line arguments for the application
      */
     public static void main(String... args) {
-        new Controller();
+        if (args.length > 0 && args[0].equals("batch"))
+            BatchAnalysis.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("perft"))
+            Perft.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("tune"))
+            EvaluationTuner.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("bench"))
+            EvaluationBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("uci"))
+            Uci.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("server"))
+            GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("cds"))
+            ClassDataArchive.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals("match"))
+            Match.main(Arrays.copyOfRange(args, 1, args.length));
+        else
+            new Controller();
     }
 }
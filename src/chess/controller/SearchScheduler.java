@@ -0,0 +1,331 @@
+package chess.controller;
+
+import chess.model.Engine;
+import chess.model.Model;
+import chess.model.SearchResult;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues the engine searches of many clients onto a fixed number of workers.
+ * Every request has a priority, a node limit and a time budget that counts from its submission, so time spent
+ * waiting is taken from the search and not added to the answer. The queue is ordered by submission time, where every
+ * priority step counts as PRIORITY_STEP_MILLIS earlier, so urgent requests overtake others but nothing waits forever.
+ * <p>
+ * When many searches are waiting, new ones are searched less deep, one half step less for every degradeQueue
+ * waiting searches. When maxQueue searches are waiting, new ones are rejected instead of making everybody wait longer.
+ */
+public class SearchScheduler {
+    public static final int MIN_PRIORITY = 0;
+    public static final int NORMAL_PRIORITY = 5;
+    public static final int MAX_PRIORITY = 9;
+    private static final long PRIORITY_STEP_MILLIS = 100;
+    private static final int WAIT_SAMPLES = 1024;
+
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService timer;
+    private int maxQueue;
+    private int degradeQueue;
+    private AtomicLong sequence;
+    private AtomicLong submitted;
+    private AtomicLong rejected;
+    private AtomicLong degraded;
+    private AtomicLong expired;
+    private AtomicLong completed;
+    private long[] waitTimes;
+    private int waitCount;
+
+    /**
+     * Creates the workers and the timer of the time budgets.
+     *
+     * @param threads      the number of searches at the same time
+     * @param maxQueue     the number of waiting searches at which new ones are rejected
+     * @param degradeQueue the number of waiting searches per half step that new searches lose, 0 to never lose depth
+     */
+    public SearchScheduler(int threads, int maxQueue, int degradeQueue) {
+        this.maxQueue = maxQueue;
+        this.degradeQueue = degradeQueue;
+
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                runnable -> createDaemon(runnable, "engine-worker"));
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> createDaemon(runnable, "search-timer"));
+
+        sequence = new AtomicLong();
+        submitted = new AtomicLong();
+        rejected = new AtomicLong();
+        degraded = new AtomicLong();
+        expired = new AtomicLong();
+        completed = new AtomicLong();
+        waitTimes = new long[WAIT_SAMPLES];
+    }
+
+    /**
+     * Creates a daemon thread, so the workers never keep the JVM alive.
+     *
+     * @param runnable the work of the thread
+     * @param name     the name of the thread
+     * @return         the thread
+     */
+    private static Thread createDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Queues a search of the model. The model belongs to the scheduler until the search is done.
+     *
+     * @param model      the position to search, usually a copy of a game
+     * @param depth      the maximum depth of the search, limited to 1 to Engine.MAX_PLY and reduced when the queue is deep
+     * @param priority   MIN_PRIORITY to MAX_PRIORITY, higher is searched earlier
+     * @param nodeLimit  the maximum number of positions, 0 for no limit
+     * @param timeMillis the time budget from now on in milliseconds, 0 for no limit
+     * @return           the result of the search, cancelling it drops a waiting search
+     * @throws RejectedExecutionException if maxQueue searches are waiting or the scheduler is shut down
+     */
+    public CompletableFuture<SearchResult> submit(Model model, int depth, int priority, long nodeLimit, long timeMillis) {
+        submitted.incrementAndGet();
+        int queued = workers.getQueue().size();
+
+        if (queued >= maxQueue || workers.isShutdown()) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many searches waiting");
+        }
+
+        // limited first, so a too large depth still loses half steps that count
+        depth = Math.max(1, Math.min(Engine.MAX_PLY, depth));
+
+        if (degradeQueue > 0 && queued >= degradeQueue && depth > 1) {
+            depth = Math.max(1, depth - queued / degradeQueue);
+            degraded.incrementAndGet();
+        }
+
+        SearchTask task = new SearchTask(model, depth, Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority)), nodeLimit, timeMillis);
+        workers.execute(task);
+
+        return task.future;
+    }
+
+    /**
+     * Stops the workers. Waiting searches are dropped.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Returns the number of waiting searches.
+     *
+     * @return the length of the queue
+     */
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * Returns the number of running searches.
+     *
+     * @return the number of busy workers
+     */
+    public int getActiveSearches() {
+        return workers.getActiveCount();
+    }
+
+    /**
+     * Returns the number of submitted searches, including the rejected ones.
+     *
+     * @return the number of calls of submit
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * Returns the number of searches rejected because of a full queue.
+     *
+     * @return the number of rejected searches
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of searches that got less depth because of a deep queue.
+     *
+     * @return the number of degraded searches
+     */
+    public long getDegraded() {
+        return degraded.get();
+    }
+
+    /**
+     * Returns the number of searches that used up their time budget waiting and only got the first iteration.
+     *
+     * @return the number of expired searches
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * Returns the number of finished searches.
+     *
+     * @return the number of searches that ran
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Returns a percentile of the time the last searches waited in the queue.
+     *
+     * @param percentile the percentile, for example 50 or 99
+     * @return           the waiting time in milliseconds, 0 if nothing was searched yet
+     */
+    public synchronized double getWaitMillis(double percentile) {
+        int count = Math.min(waitCount, WAIT_SAMPLES);
+        if (count == 0)
+            return 0;
+
+        long[] sorted = Arrays.copyOf(waitTimes, count);
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+    }
+
+    /**
+     * Remembers the waiting time of a search, the oldest sample is replaced.
+     *
+     * @param nanos the waiting time in nanoseconds
+     */
+    private synchronized void recordWait(long nanos) {
+        waitTimes[waitCount++ % WAIT_SAMPLES] = nanos;
+
+        // keeps the count small, but at least one full round, so the samples stay valid
+        if (waitCount == 2 * WAIT_SAMPLES)
+            waitCount = WAIT_SAMPLES;
+    }
+
+    /**
+     * A queued search, ordered by its submission time moved forward by its priority.
+     */
+    private class SearchTask implements Runnable, Comparable<SearchTask> {
+        private final Model model;
+        private final int depth;
+        private final long nodeLimit;
+        private final long submitTime;
+        private final long deadline;
+        private final long order;
+        private final long number;
+        private final CompletableFuture<SearchResult> future;
+        private boolean finished;
+
+        /**
+         * Sets the limits of the search and its place in the queue.
+         *
+         * @param model      the position to search
+         * @param depth      the maximum depth of the search
+         * @param priority   the priority of the search
+         * @param nodeLimit  the maximum number of positions, 0 for no limit
+         * @param timeMillis the time budget from now on in milliseconds, 0 for no limit
+         */
+        private SearchTask(Model model, int depth, int priority, long nodeLimit, long timeMillis) {
+            this.model = model;
+            this.depth = depth;
+            this.nodeLimit = nodeLimit;
+
+            submitTime = System.nanoTime();
+            deadline = timeMillis > 0 ? submitTime + timeMillis * 1000000 : 0;
+            order = System.currentTimeMillis() - priority * PRIORITY_STEP_MILLIS;
+            number = sequence.incrementAndGet();
+            future = new CompletableFuture<>();
+        }
+
+        /**
+         * Searches with the limits of the request and completes the future.
+         */
+        @Override
+        public void run() {
+            if (future.isDone())
+                return;
+
+            long start = System.nanoTime();
+            recordWait(start - submitTime);
+
+            Engine engine = model.getEngine();
+            engine.setDepth(depth);
+            engine.setNodeLimit(nodeLimit);
+
+            ScheduledFuture<?> timeout = null;
+            if (deadline != 0) {
+                if (deadline <= start)
+                    expired.incrementAndGet();
+
+                // repeated, so a stop right at the start of the search is not lost
+                timeout = timer.scheduleAtFixedRate(this::stop, Math.max(0, deadline - start), 10000000, TimeUnit.NANOSECONDS);
+            }
+
+            SearchResult result = null;
+            RuntimeException failure = null;
+
+            try {
+                result = engine.findBestMove();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            // finished before completing, so a pooled model gets no late stop from this search,
+            // cancelling alone does not wait for a stop that is already running
+            finish();
+            if (timeout != null)
+                timeout.cancel(false);
+
+            completed.incrementAndGet();
+
+            if (failure != null)
+                future.completeExceptionally(failure);
+            else
+                future.complete(result);
+        }
+
+        /**
+         * Stops the search when the time budget is used up, unless it is already finished.
+         */
+        private synchronized void stop() {
+            if (!finished)
+                model.getEngine().stop();
+        }
+
+        /**
+         * Marks the search as finished. A stop running at the same time is waited for, later ones do nothing.
+         */
+        private synchronized void finish() {
+            finished = true;
+        }
+
+        /**
+         * Orders by the submission time moved forward by the priority, then by submission.
+         *
+         * @param other the other search
+         * @return      negative if this search runs first
+         */
+        @Override
+        public int compareTo(SearchTask other) {
+            int comparison = Long.compare(order, other.order);
+
+            return comparison != 0 ? comparison : Long.compare(number, other.number);
+        }
+    }
+}
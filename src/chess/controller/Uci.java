@@ -0,0 +1,304 @@
+package chess.controller;
+
+import chess.model.Engine;
+import chess.model.Model;
+import chess.model.Move;
+import chess.model.SearchResult;
+import chess.model.TranspositionTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Speaks the Universal Chess Interface on standard input and output, so the engine can be used by chess GUIs
+ * and analysis clients. The search runs on its own thread, so "stop" and "isready" are answered while it thinks.
+ * The option MultiPV sets the number of best root moves reported with score and principal variation.
+ */
+public class Uci {
+    private static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private Model model;
+    private Engine engine;
+    private PrintStream out;
+    private Thread searchThread;
+    private Timer timer;
+    private long searchStart;
+    private boolean reported;
+
+    /**
+     * Creates the model in the start position.
+     *
+     * @param out the stream for the answers
+     */
+    public Uci(PrintStream out) {
+        this.out = out;
+
+        model = new Model(START_POSITION);
+        engine = model.getEngine();
+        engine.setSearchListener(this::report);
+        timer = new Timer(true);
+    }
+
+    /**
+     * Entry point of the UCI mode.
+     * Usage: uci
+     *
+     * @param args not used
+     */
+    public static void main(String... args) {
+        try {
+            new Uci(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+        } catch (IOException e) {
+            System.err.println("UCI input failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads and handles commands until "quit" or the end of the input.
+     *
+     * @param in the commands, one per line
+     * @throws IOException          if the input can't be read
+     * @throws InterruptedException if the thread gets interrupted while waiting for the search
+     */
+    public void run(BufferedReader in) throws IOException, InterruptedException {
+        String line;
+
+        while ((line = in.readLine()) != null)
+            if (!handle(line.trim()))
+                break;
+
+        stopSearch();
+        timer.cancel();
+    }
+
+    /**
+     * Handles one command.
+     *
+     * @param command the command line
+     * @return        false if the command was "quit"
+     * @throws InterruptedException if the thread gets interrupted while waiting for the search
+     */
+    public boolean handle(String command) throws InterruptedException {
+        String[] tokens = command.split("\\s+");
+
+        switch (tokens[0]) {
+            case "uci":
+                send("id name Chess");
+                send("id author vbomm");
+                send("option name MultiPV type spin default 1 min 1 max 256");
+                send("option name Hash type spin default " + Integer.getInteger("chess.hash", 16) + " min 1 max 4096");
+                send("uciok");
+                break;
+            case "isready": send("readyok"); break;
+            case "setoption": stopSearch(); setOption(tokens); break;
+            case "ucinewgame":
+                stopSearch();
+                if (engine.getTranspositionTable() != null)
+                    engine.getTranspositionTable().clear();
+                break;
+            case "position": stopSearch(); setPosition(tokens); break;
+            case "go": stopSearch(); go(tokens); break;
+            case "stop": stopSearch(); break;
+            case "quit": return false;
+            default: if (!command.isEmpty()) System.err.println("Unknown command " + command);
+        }
+
+        return true;
+    }
+
+    /**
+     * Handles "setoption name &lt;name&gt; value &lt;value&gt;".
+     *
+     * @param tokens the words of the command
+     */
+    private void setOption(String[] tokens) {
+        String name = "";
+        String value = "";
+
+        for (int i = 1; i < tokens.length - 1; i++)
+            if (tokens[i].equals("name"))
+                name = tokens[i + 1];
+            else if (tokens[i].equals("value"))
+                value = tokens[i + 1];
+
+        try {
+            switch (name) {
+                case "MultiPV": engine.setMultiPv(Integer.parseInt(value)); break;
+                case "Hash": engine.setTranspositionTable(new TranspositionTable(Integer.parseInt(value))); break;
+                default: System.err.println("Unknown option " + name);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value " + value + " for option " + name);
+        }
+    }
+
+    /**
+     * Handles "position [startpos | fen &lt;FEN&gt;] [moves &lt;move&gt;...]".
+     *
+     * @param tokens the words of the command
+     */
+    private void setPosition(String[] tokens) {
+        int movesIndex = tokens.length;
+        for (int i = 1; i < tokens.length; i++)
+            if (tokens[i].equals("moves")) {
+                movesIndex = i;
+                break;
+            }
+
+        try {
+            if (tokens.length > 1 && tokens[1].equals("fen"))
+                model.loadFen(String.join(" ", Arrays.copyOfRange(tokens, 2, movesIndex)));
+            else
+                model.loadFen(START_POSITION);
+
+            for (int i = movesIndex + 1; i < tokens.length; i++)
+                if (!model.playMove(tokens[i])) {
+                    System.err.println("Illegal move " + tokens[i]);
+                    break;
+                }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid position: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handles "go [depth &lt;n&gt;] [nodes &lt;n&gt;] [movetime &lt;ms&gt;] [wtime &lt;ms&gt; btime &lt;ms&gt; [winc &lt;ms&gt; binc &lt;ms&gt;]] [infinite]"
+     * and starts the search on its own thread. Without a limit the search runs until "stop".
+     *
+     * @param tokens the words of the command
+     */
+    private void go(String[] tokens) {
+        int depth = Engine.MAX_PLY;
+        long nodes = 0;
+        long moveTime = 0;
+        long[] times = new long[2];
+        long[] increments = new long[2];
+
+        try {
+            for (int i = 1; i < tokens.length - 1; i++)
+                switch (tokens[i]) {
+                    case "depth": depth = Math.min(Engine.MAX_PLY, Integer.parseInt(tokens[++i])); break;
+                    case "nodes": nodes = Long.parseLong(tokens[++i]); break;
+                    case "movetime": moveTime = Long.parseLong(tokens[++i]); break;
+                    case "wtime": times[0] = Long.parseLong(tokens[++i]); break;
+                    case "btime": times[1] = Long.parseLong(tokens[++i]); break;
+                    case "winc": increments[0] = Long.parseLong(tokens[++i]); break;
+                    case "binc": increments[1] = Long.parseLong(tokens[++i]); break;
+                    default:
+                }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid go command " + String.join(" ", tokens));
+            return;
+        }
+
+        // without a fixed time a small part of the remaining time is used
+        int color = model.getWhosTurn() == ChessColor.WHITE ? 0 : 1;
+        if (moveTime == 0 && times[color] > 0)
+            moveTime = Math.max(10, Math.min(times[color] / 30 + increments[color] / 2, times[color] - 50));
+
+        engine.setDepth(Math.max(1, depth));
+        engine.setNodeLimit(nodes);
+
+        TimerTask timeout = null;
+        if (moveTime > 0) {
+            // repeated, so a timeout right at the start of the search is not lost
+            timeout = new TimerTask() {
+                @Override
+                public void run() {
+                    engine.stop();
+                }
+            };
+            timer.schedule(timeout, moveTime, 10);
+        }
+
+        TimerTask searchTimeout = timeout;
+        searchStart = System.nanoTime();
+        reported = false;
+
+        searchThread = new Thread(() -> {
+            ArrayList<SearchResult> lines = engine.findBestMoves();
+
+            if (searchTimeout != null)
+                searchTimeout.cancel();
+
+            if (!reported)
+                report(lines);
+
+            Move bestMove = lines.get(0).getBestMove();
+            send("bestmove " + (bestMove == null ? "0000" : model.getMoveName(bestMove)));
+        });
+        searchThread.start();
+    }
+
+    /**
+     * Stops the running search and waits until its best move is sent.
+     *
+     * @throws InterruptedException if the thread gets interrupted while waiting for the search
+     */
+    private void stopSearch() throws InterruptedException {
+        // repeated, since a stop right after go could come before the engine resets its flag
+        while (searchThread != null && searchThread.isAlive()) {
+            engine.stop();
+            searchThread.join(10);
+        }
+    }
+
+    /**
+     * Sends the lines of a completed iteration as info lines.
+     *
+     * @param lines the lines, the best move first
+     */
+    private void report(ArrayList<SearchResult> lines) {
+        reported = true;
+        long millis = (System.nanoTime() - searchStart) / 1000000;
+
+        for (int i = 0; i < lines.size(); i++) {
+            SearchResult line = lines.get(i);
+            StringBuilder info = new StringBuilder("info depth ").append(line.getDepth()).append(" multipv ").append(i + 1)
+                    .append(" score ").append(getScoreText(line.getScore())).append(" nodes ").append(line.getNodes())
+                    .append(" time ").append(millis).append(" nps ").append(line.getNodes() * 1000 / Math.max(1, millis)).append(" pv");
+
+            for (var move : line.getPrincipalVariation())
+                info.append(' ').append(model.getMoveName(move));
+
+            send(info.toString());
+        }
+    }
+
+    /**
+     * Converts a score from the view of white into the UCI score of the side to move.
+     *
+     * @param score the score from the view of white
+     * @return      "cp &lt;centipawns&gt;" or "mate &lt;moves&gt;", negative if the side to move gets mated
+     */
+    private String getScoreText(int score) {
+        if (model.getWhosTurn() == ChessColor.BLACK)
+            score = -score;
+
+        if (Math.abs(score) < Engine.MATE_SCORE - 2 * Engine.MAX_PLY)
+            return "cp " + score;
+
+        int plies = Engine.MATE_SCORE - Math.abs(score);
+
+        return "mate " + (score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+    }
+
+    /**
+     * Writes one line of the protocol.
+     *
+     * @param line the line
+     */
+    private synchronized void send(String line) {
+        out.println(line);
+        out.flush();
+    }
+}
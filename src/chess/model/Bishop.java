@@ -17,7 +17,7 @@ public class Bishop extends Piece {
      */
     public Bishop(Board board, ChessColor color, int tile) {
         super(board, color, PieceType.BISHOP, tile);
-        lookupTable = getBoard().getLookupTables().getBishop();
+        lookupTable = LookupTables.getBishop();
     }
 
     @Override
@@ -35,12 +35,12 @@ public class Bishop extends Piece {
         int tile = lookupTable[getTile()][direction];
 
         while(tile > -1) {
-            if(!getBoard().isTileEmpty(tile)) {
-                if(!getBoard().isSameColor(getTile(), tile))
-                    captures[tile] = true;
+            if(!getBoard().isSameColor(getTile(), tile))
+                captures[tile] = true;
 
+            if(!getBoard().isTileEmpty(tile))
                 break;
-            }
+
             tile = lookupTable[tile][direction];
         }
     }
@@ -5,6 +5,7 @@ import chess.controller.MoveHistory;
 import chess.controller.PieceType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -12,9 +13,10 @@ import java.util.HashMap;
  */
 public class Board {
     private Model model;
+    private MoveHistory moveHistory;
     private MoveExecutor moveExecutor;
-    private LookupTables lookupTables;
     private Piece[] tile;
+    private int[] tileFeatures;
     private ArrayList<ArrayList<Piece>> pieces;
     private boolean whiteCanLongCastle;
     private boolean whiteCanShortCastle;
@@ -22,6 +24,12 @@ public class Board {
     private boolean blackCanShortCastle;
     private ChessColor whosTurn;
     private int noPawnMoveOrCaptureCounter;
+    private long hash;
+    private long pawnHash;
+    private long[] keyHistory;
+    private int keyHistorySize;
+    private long changedTiles;
+    private NetworkAccumulator networkAccumulator;
 
     private HashMap<ChessColor, Integer> colorHash;
     private Piece[] kings;
@@ -29,17 +37,22 @@ public class Board {
     /**
      * Default constructor.
      *
-     * @param model
+     * @param model       the Model object
+     * @param moveHistory the history of the moves played on this board
      */
     public Board(Model model, MoveHistory moveHistory) {
         this.model = model;
+        this.moveHistory = moveHistory;
         moveExecutor = new MoveExecutor(this, moveHistory);
-        lookupTables = new LookupTables(this);
 
         tile = new Piece[64];
+        tileFeatures = new int[64];
+        for (int i = 0; i < 64; i++)
+            tileFeatures[i] = i;
         kings = new King[2];
 
         noPawnMoveOrCaptureCounter = 0;
+        keyHistory = new long[256];
 
         colorHash = new HashMap<>();
         colorHash.put(ChessColor.WHITE, 0);
@@ -48,6 +61,124 @@ public class Board {
         initBoard();
     }
 
+    /**
+     * Creates an independent copy of a board, so another thread can search the same position.
+     * The pieces are copied in the order of the piece lists.
+     *
+     * @param model       the Model object of the copy
+     * @param moveHistory the history of the copy
+     * @param other       the board to copy
+     */
+    public Board(Model model, MoveHistory moveHistory, Board other) {
+        this.model = model;
+        this.moveHistory = moveHistory;
+        moveExecutor = new MoveExecutor(this, moveHistory);
+        colorHash = other.colorHash;
+
+        tile = new Piece[64];
+        tileFeatures = Arrays.copyOf(other.tileFeatures, 64);
+        kings = new King[2];
+        pieces = new ArrayList<>(2);
+
+        for (int c = 0; c < 2; c++) {
+            ArrayList<Piece> otherList = other.pieces.get(c);
+            ArrayList<Piece> list = new ArrayList<>(otherList.size() + 2);
+
+            for (var otherPiece : otherList) {
+                Piece piece = createPiece(otherPiece.getType(), otherPiece.getColor(), otherPiece.getTile());
+                piece.copyState(otherPiece);
+                list.add(piece);
+
+                if (otherPiece.isActive())
+                    tile[piece.getTile()] = piece;
+
+                if (otherPiece == other.kings[c])
+                    kings[c] = piece;
+            }
+
+            pieces.add(list);
+        }
+
+        whiteCanLongCastle = other.whiteCanLongCastle;
+        whiteCanShortCastle = other.whiteCanShortCastle;
+        blackCanLongCastle = other.blackCanLongCastle;
+        blackCanShortCastle = other.blackCanShortCastle;
+        whosTurn = other.whosTurn;
+        noPawnMoveOrCaptureCounter = other.noPawnMoveOrCaptureCounter;
+        hash = other.hash;
+        pawnHash = other.pawnHash;
+        keyHistory = Arrays.copyOf(other.keyHistory, other.keyHistory.length);
+        keyHistorySize = other.keyHistorySize;
+
+        if (other.networkAccumulator != null)
+            setNetwork(other.networkAccumulator.getNetwork());
+    }
+
+    /**
+     * Takes over the position of another board, like the copy constructor,
+     * but reuses the arrays of this board and its pieces wherever type and color at the same place of the piece list match.
+     *
+     * @param other the board to copy
+     */
+    public void copyPosition(Board other) {
+        Arrays.fill(tile, null);
+        System.arraycopy(other.tileFeatures, 0, tileFeatures, 0, 64);
+        kings[0] = null;
+        kings[1] = null;
+
+        for (int c = 0; c < 2; c++) {
+            ArrayList<Piece> otherList = other.pieces.get(c);
+            ArrayList<Piece> list = pieces.get(c);
+
+            for (int i = 0; i < otherList.size(); i++) {
+                Piece otherPiece = otherList.get(i);
+                Piece piece = i < list.size() ? list.get(i) : null;
+
+                if (piece == null || piece.getType() != otherPiece.getType() || piece.getColor() != otherPiece.getColor()) {
+                    piece = createPiece(otherPiece.getType(), otherPiece.getColor(), otherPiece.getTile());
+
+                    if (i < list.size())
+                        list.set(i, piece);
+                    else
+                        list.add(piece);
+                }
+
+                piece.copyState(otherPiece);
+
+                if (otherPiece.isActive())
+                    tile[piece.getTile()] = piece;
+
+                if (otherPiece == other.kings[c])
+                    kings[c] = piece;
+            }
+
+            while (list.size() > otherList.size())
+                list.remove(list.size() - 1);
+        }
+
+        whiteCanLongCastle = other.whiteCanLongCastle;
+        whiteCanShortCastle = other.whiteCanShortCastle;
+        blackCanLongCastle = other.blackCanLongCastle;
+        blackCanShortCastle = other.blackCanShortCastle;
+        whosTurn = other.whosTurn;
+        noPawnMoveOrCaptureCounter = other.noPawnMoveOrCaptureCounter;
+        hash = other.hash;
+        pawnHash = other.pawnHash;
+        changedTiles = -1L;
+
+        if (keyHistory.length < other.keyHistory.length)
+            keyHistory = new long[other.keyHistory.length];
+        System.arraycopy(other.keyHistory, 0, keyHistory, 0, other.keyHistorySize);
+        keyHistorySize = other.keyHistorySize;
+
+        if (other.networkAccumulator == null)
+            networkAccumulator = null;
+        else if (networkAccumulator == null || networkAccumulator.getNetwork() != other.networkAccumulator.getNetwork())
+            setNetwork(other.networkAccumulator.getNetwork());
+        else
+            networkAccumulator.refresh(this);
+    }
+
     /**
      * Sets the variables of the board.
      */
@@ -66,8 +197,19 @@ public class Board {
      */
     public void clear() {
         initBoard();
-        for (int i = 0; i < 64; i++)
+        kings = new King[2];
+        for (int i = 0; i < 64; i++) {
             tile[i] = null;
+            tileFeatures[i] = i;
+        }
+
+        hash = 0;
+        pawnHash = 0;
+        keyHistorySize = 0;
+        changedTiles = -1L;
+
+        if (networkAccumulator != null)
+            networkAccumulator.reset();
     }
 
     /**
@@ -89,16 +231,48 @@ public class Board {
      * @param index the index of the piece
      */
     public void addPiece(PieceType type, ChessColor color, int index) {
+        Piece piece = createPiece(type, color, index);
+
+        if (type == PieceType.KING)
+            kings[colorHash.get(color)] = piece;
+
+        setTile(index, piece);
+        pieces.get(colorHash.get(color)).add(piece);
+    }
+
+    /**
+     * Creates a piece on this board without placing it.
+     *
+     * @param type  the type of the piece
+     * @param color the color of the piece
+     * @param index the index of the piece
+     * @return      the new piece
+     */
+    private Piece createPiece(PieceType type, ChessColor color, int index) {
         switch (type) {
-            case PAWN: tile[index] = new Pawn(this, color, index); break;
-            case KNIGHT: tile[index] = new Knight(this, color, index); break;
-            case BISHOP: tile[index] = new Bishop(this, color, index); break;
-            case ROOK: tile[index] = new Rook(this, color, index); break;
-            case QUEEN: tile[index] = new Queen(this, color, index); break;
-            case KING: tile[index] = new King(this, color, index); kings[colorHash.get(color)] = tile[index]; break;
+            case PAWN: return new Pawn(this, color, index);
+            case KNIGHT: return new Knight(this, color, index);
+            case BISHOP: return new Bishop(this, color, index);
+            case ROOK: return new Rook(this, color, index);
+            case QUEEN: return new Queen(this, color, index);
+            default: return new King(this, color, index);
         }
+    }
+
+    /**
+     * Returns the piece of this board that corresponds to a piece of the board this one was copied from.
+     *
+     * @param other the board this one was copied from
+     * @param piece a piece of the other board
+     * @return      the piece at the same position of the piece list, null if piece is null
+     */
+    public Piece getCopiedPiece(Board other, Piece piece) {
+        if (piece == null)
+            return null;
+
+        int color = colorHash.get(piece.getColor());
 
-        pieces.get(colorHash.get(color)).add(tile[index]);
+        return pieces.get(color).get(other.pieces.get(color).indexOf(piece));
     }
 
     /**
@@ -117,7 +291,7 @@ public class Board {
      * @return      the column of the index
      */
     public int getColumn(int index) {
-        return model.getColumn(index);
+        return LookupTables.getColumn(index);
     }
 
     /**
@@ -127,7 +301,7 @@ public class Board {
      * @return      the row of the index
      */
     public int getRow(int index) {
-        return model.getRow(index);
+        return LookupTables.getRow(index);
     }
 
     /**
@@ -139,7 +313,7 @@ public class Board {
      * @return the advancement score of the piece
      */
     public int getAdvancement(ChessColor color, int index) {
-        return model.getAdvancement(color, index);
+        return LookupTables.getAdvancement(colorHash.get(color), index);
     }
 
     /**
@@ -208,17 +382,72 @@ public class Board {
      */
     public void setPieceTile(int from, int to) {
         tile[from].setTile(to);
-        tile[to] = tile[from];
+        setTile(to, tile[from]);
     }
 
     /**
-     * Sets a tile to a piece.
+     * Sets a tile to a piece. Keeps the hashes of the position and the pawns and the network accumulators up to date.
      *
      * @param index the index of the tile
-     * @param piece the piece
+     * @param piece the piece, null to clear the tile
      */
     public void setTile(int index, Piece piece) {
+        if (tile[index] != null) {
+            hash ^= Zobrist.getPieceKey(tile[index], index);
+            if (tile[index].getType() == PieceType.PAWN)
+                pawnHash ^= Zobrist.getPieceKey(tile[index], index);
+            if (networkAccumulator != null)
+                networkAccumulator.update(tile[index], index, false);
+        }
+
         tile[index] = piece;
+        tileFeatures[index] = getTileFeature(piece, index);
+        changedTiles |= 1L << index;
+
+        if (piece != null) {
+            hash ^= Zobrist.getPieceKey(piece, index);
+            if (piece.getType() == PieceType.PAWN)
+                pawnHash ^= Zobrist.getPieceKey(piece, index);
+            if (networkAccumulator != null)
+                networkAccumulator.update(piece, index, true);
+        }
+    }
+
+    /**
+     * Returns the tiles changed since the last call and starts collecting again.
+     * Moves and take backs that cancel each other out still count as changes.
+     *
+     * @return the changed tiles, one bit per tile index
+     */
+    public long takeChangedTiles() {
+        long tiles = changedTiles;
+        changedTiles = 0;
+
+        return tiles;
+    }
+
+    /**
+     * Returns the feature of every tile, the index of its score in a table of 13 rows of 64 tiles.
+     * Row 0 stands for an empty tile, rows 1 to 6 for the white and 7 to 12 for the black piece types.
+     *
+     * @return the features of the tiles, not to be changed
+     */
+    public int[] getTileFeatures() {
+        return tileFeatures;
+    }
+
+    /**
+     * Returns the feature of a tile with the given piece.
+     *
+     * @param piece the piece on the tile, null if empty
+     * @param index the index of the tile
+     * @return      the feature of the tile
+     */
+    private static int getTileFeature(Piece piece, int index) {
+        if (piece == null)
+            return index;
+
+        return (1 + piece.getType().ordinal() + (piece.getColor() == ChessColor.WHITE ? 0 : 6)) * 64 + index;
     }
 
     /**
@@ -227,6 +456,10 @@ public class Board {
      * @param move the move to be executed
      */
     public void executeMove(Move move) {
+        if (keyHistorySize == keyHistory.length)
+            keyHistory = Arrays.copyOf(keyHistory, keyHistorySize * 2);
+
+        keyHistory[keyHistorySize++] = getZobristKey();
         moveExecutor.executeMove(move);
     }
 
@@ -237,6 +470,29 @@ public class Board {
      */
     public void reverseMove(Move move) {
         moveExecutor.reverseMove(move);
+        keyHistorySize--;
+    }
+
+    /**
+     * Returns true if the current position already occurred since the last pawn move or capture.
+     * Only every second position is compared, since the player to move has to be the same.
+     *
+     * @return true if the position is a repetition
+     */
+    public boolean isRepetition() {
+        int oldest = Math.max(0, keyHistorySize - noPawnMoveOrCaptureCounter);
+
+        // at least two moves of each player are needed to get back to a position
+        if (keyHistorySize - 4 < oldest)
+            return false;
+
+        long key = getZobristKey();
+
+        for (int i = keyHistorySize - 4; i >= oldest; i -= 2)
+            if (keyHistory[i] == key)
+                return true;
+
+        return false;
     }
 
     /**
@@ -275,7 +531,7 @@ public class Board {
      * @return         the index of the tile
      */
     public int tileNameToIndex(String tileName) {
-        return model.tileNameToIndex(tileName);
+        return LookupTables.getTileIndex(tileName);
     }
 
     /**
@@ -283,6 +539,60 @@ public class Board {
      */
     public void changeWhosTurn() {
         whosTurn = whosTurn == ChessColor.WHITE ? ChessColor.BLACK : ChessColor.WHITE;
+        hash ^= Zobrist.getBlackToMoveKey();
+    }
+
+    /**
+     * Returns the Zobrist hash of the position. Pieces and the player to move are hashed incrementally,
+     * castling rights and the en passant column are added on request.
+     *
+     * @return the hash of the position
+     */
+    public long getZobristKey() {
+        int castlingRights = (hasCastlingRight(60, 63) ? 1 : 0) | (hasCastlingRight(60, 56) ? 2 : 0)
+                | (hasCastlingRight(4, 7) ? 4 : 0) | (hasCastlingRight(4, 0) ? 8 : 0);
+        long key = hash ^ Zobrist.getCastlingKey(castlingRights);
+
+        if (!moveHistory.getMoveHistory().isEmpty()) {
+            Move lastMove = moveHistory.getMoveHistory().get(moveHistory.getMoveHistory().size() - 1);
+
+            if (lastMove.getPiece().getType() == PieceType.PAWN && Math.abs(lastMove.getStart() - lastMove.getDestination()) == 16)
+                key ^= Zobrist.getEnPassantKey(getColumn(lastMove.getDestination()));
+        }
+
+        return key;
+    }
+
+    /**
+     * Sets the neural network used for the evaluation and computes its accumulators for the current position.
+     *
+     * @param network the network, null to evaluate without it
+     */
+    public void setNetwork(Network network) {
+        networkAccumulator = null;
+
+        if (network != null) {
+            networkAccumulator = new NetworkAccumulator(network);
+            networkAccumulator.refresh(this);
+        }
+    }
+
+    /**
+     * Returns the accumulators of the neural network, null if no network is used.
+     *
+     * @return the network accumulators
+     */
+    public NetworkAccumulator getNetworkAccumulator() {
+        return networkAccumulator;
+    }
+
+    /**
+     * Returns the Zobrist hash of the pawns of both colors, used to look up the pawn structure.
+     *
+     * @return the hash of the pawns
+     */
+    public long getPawnKey() {
+        return pawnHash;
     }
 
     /**
@@ -314,12 +624,61 @@ public class Board {
     }
 
     /**
-     * Returns the lookupTables object
+     * Returns the number of active pieces of both colors, kings included.
+     *
+     * @return the number of pieces on the board
+     */
+    public int getPieceCount() {
+        int count = 0;
+
+        for (var list : pieces)
+            for (var piece : list)
+                if (piece.isActive())
+                    count++;
+
+        return count;
+    }
+
+    /**
+     * Returns true if neither player has enough material left to mate, which is the case
+     * when there are no pawns, rooks or queens and at most one knight or bishop.
+     *
+     * @return true if the position is a draw by insufficient material
+     */
+    public boolean hasInsufficientMaterial() {
+        int minorPieces = 0;
+
+        for (var list : pieces)
+            for (var piece : list)
+                if (piece.isActive())
+                    switch (piece.getType()) {
+                        case PAWN: case ROOK: case QUEEN: return false;
+                        case KNIGHT: case BISHOP: minorPieces++; break;
+                    }
+
+        return minorPieces <= 1;
+    }
+
+    /**
+     * Returns true if at least one king and rook of the same color have not moved from their start tiles yet.
+     *
+     * @return true if castling is still possible later in the game
+     */
+    public boolean hasCastlingRights() {
+        return hasCastlingRight(60, 56) || hasCastlingRight(60, 63) || hasCastlingRight(4, 0) || hasCastlingRight(4, 7);
+    }
+
+    /**
+     * Returns true if the king and the rook have never moved from their start tiles.
      *
-     * @return the lookupTables object
+     * @param kingTile the start tile of the king
+     * @param rookTile the start tile of the rook
+     * @return         true if the pair keeps its castling right
      */
-    public LookupTables getLookupTables() {
-        return lookupTables;
+    public boolean hasCastlingRight(int kingTile, int rookTile) {
+        return tile[kingTile] != null && tile[kingTile].getType() == PieceType.KING && tile[kingTile].neverMoved()
+                && tile[rookTile] != null && tile[rookTile].getType() == PieceType.ROOK && tile[rookTile].neverMoved()
+                && tile[kingTile].getColor() == tile[rookTile].getColor();
     }
 
     /**
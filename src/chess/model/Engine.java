@@ -3,15 +3,34 @@ package chess.model;
 import chess.controller.ChessColor;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 /**
  * The engine to generate moves of the CPU player.
  */
 public class Engine {
+    public static final int MATE_SCORE = 30000;
+    public static final int TABLEBASE_WIN_SCORE = 20000;
+    public static final int MAX_PLY = 64;
+
     private Board board;
     private MoveGenerator moveGenerator;
     private Evaluator evaluator;
     private int depth;
+    private int rootDepth;
+    private long nodeLimit;
+    private long nodes;
+    private volatile boolean stopped;
+    private Move[][] principalVariation;
+    private int[] principalVariationLength;
+    private Tablebase tablebase;
+    private EvalCache evalCache;
+    private TranspositionTable transpositionTable;
+    private int multiPv = 1;
+    private SearchListener listener;
+    private SplittableRandom random = new SplittableRandom();
+    private long seed;
+    private boolean seeded;
 
     /**
      * The default constructor.
@@ -19,18 +38,287 @@ public class Engine {
      * @param board         the Board object
      * @param moveGenerator the moveGenerator object
      * @param evaluator     the Evaluator object
+     * @param depth         the maximum depth of the search
      */
     public Engine(Board board, MoveGenerator moveGenerator, Evaluator evaluator, int depth) {
         this.board = board;
         this.moveGenerator = moveGenerator;
         this.evaluator = evaluator;
-        this.depth = depth;
+        setDepth(depth);
+    }
+
+    /**
+     * Sets the endgame tablebases used at the root and in the search, null to disable probing.
+     *
+     * @param tablebase the tablebases
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Returns the endgame tablebases, null if probing is disabled.
+     *
+     * @return the tablebases
+     */
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Sets the cache for the scores of the evaluator, null to evaluate every position again.
+     *
+     * @param evalCache the evaluation cache
+     */
+    public void setEvalCache(EvalCache evalCache) {
+        this.evalCache = evalCache;
+    }
+
+    /**
+     * Returns the cache for the scores of the evaluator, null if there is none.
+     *
+     * @return the evaluation cache
+     */
+    public EvalCache getEvalCache() {
+        return evalCache;
+    }
+
+    /**
+     * Sets the table for the scores of searched positions, null to search every transposition again.
+     * The table is shared by the root moves, the iterations and the searches of a game.
+     *
+     * @param transpositionTable the transposition table
+     */
+    public void setTranspositionTable(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+    }
+
+    /**
+     * Returns the table for the scores of searched positions, null if there is none.
+     *
+     * @return the transposition table
+     */
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Sets the number of best root moves that findBestMoves returns with exact scores and principal variations.
+     *
+     * @param multiPv the number of lines, at least 1
+     */
+    public void setMultiPv(int multiPv) {
+        this.multiPv = Math.max(1, multiPv);
+    }
+
+    /**
+     * Returns the number of best root moves that findBestMoves returns.
+     *
+     * @return the number of lines
+     */
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    /**
+     * Sets the listener that gets the lines of every completed iteration, null for none.
+     *
+     * @param listener the listener
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the generator that chooses between moves with the same score, so the engine does not always play the same
+     * game. It belongs to this engine and is only used by the searching thread. Null disables the choice, the first
+     * of the moves with the same score is played and the search is reproducible.
+     *
+     * @param random the generator, null to keep the first move
+     */
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+        seeded = false;
+    }
+
+    /**
+     * Makes the choice between moves with the same score depend only on the seed and the position. Every search starts
+     * with a generator seeded by both and an empty transposition table, so the same position gives the same moves and
+     * node counts, while other positions still vary. That only holds if no other engine uses the table at the same
+     * time, copies of a seeded model get their own table. The table of an engine is allocated once and cleared for
+     * every search. The user interface doesn't ponder with a seed and reuses the table of its model for the search
+     * of every move.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        seeded = true;
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Returns true if the choice between moves with the same score is seeded, so every search starts with an empty
+     * transposition table.
+     *
+     * @return true if seeded
+     */
+    public boolean isSeeded() {
+        return seeded;
     }
 
     /**
-     * Generates the best move.
+     * Takes over how another engine chooses between moves with the same score: not at all, seeded or with an own
+     * unseeded generator, which is never shared with the other engine.
+     *
+     * @param other the engine to copy the setting from
+     */
+    public void copyRandom(Engine other) {
+        if (other.seeded)
+            setSeed(other.seed);
+        else
+            setRandom(other.random != null ? new SplittableRandom() : null);
+    }
+
+    /**
+     * Stops the running search from another thread. The search returns the result of the last completed depth.
+     * The first depth is always completed, so there is a move even if the search is stopped right away.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the maximum depth of the search.
+     *
+     * @return the depth in half steps
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Sets the maximum depth of the search, limited to 1 to MAX_PLY.
+     *
+     * @param depth the depth in half steps
+     */
+    public void setDepth(int depth) {
+        this.depth = Math.max(1, Math.min(MAX_PLY, depth));
+    }
+
+    /**
+     * Sets the maximum number of positions a search may visit, 0 for no limit.
+     * When the limit is reached, the result of the last completed depth is used.
+     *
+     * @param nodeLimit the maximum number of positions
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Generates the best move and executes it.
      */
     public void move() {
+        SearchResult result = findBestMove();
+
+        if (result.getBestMove() != null)
+            board.executeMove(result.getBestMove());
+        else {
+            System.err.println("Was unable to move");
+            board.changeWhosTurn();
+        }
+    }
+
+    /**
+     * Searches the current position with increasing depth until the maximum depth or the node limit is reached.
+     * The board is left unchanged.
+     *
+     * @return the result of the deepest completed search
+     */
+    public SearchResult findBestMove() {
+        return findBestMoves().get(0);
+    }
+
+    /**
+     * Searches the current position like findBestMove, but returns up to multiPv lines.
+     * The first line is the best move, the others follow ordered by their score.
+     *
+     * @return the lines of the deepest completed search, at least one
+     */
+    public ArrayList<SearchResult> findBestMoves() {
+        nodes = 0;
+        stopped = false;
+
+        if (seeded)
+            random = new SplittableRandom(seed ^ board.getZobristKey());
+
+        if (transpositionTable != null) {
+            transpositionTable.allocate();
+
+            // the entries of earlier searches would change the node count
+            if (seeded)
+                transpositionTable.clear();
+        }
+
+        // created on the first search, so copies of the model that never search stay cheap
+        if (principalVariation == null) {
+            principalVariation = new Move[MAX_PLY + 2][MAX_PLY + 2];
+            principalVariationLength = new int[MAX_PLY + 2];
+        }
+
+        // the shortcut needs the score as well, if the WDL probe fails the position is searched normally
+        int wdl = canProbeTablebase() ? tablebase.probeWdl(board, moveGenerator) : Tablebase.PROBE_FAILED;
+
+        if (wdl != Tablebase.PROBE_FAILED) {
+            Move tablebaseMove = tablebase.probeRoot(board, moveGenerator);
+
+            if (tablebaseMove != null) {
+                ArrayList<Move> principalVariation = new ArrayList<>();
+                principalVariation.add(tablebaseMove);
+
+                ArrayList<SearchResult> lines = new ArrayList<>();
+                lines.add(new SearchResult(tablebaseMove, getTablebaseScore(wdl, 0), principalVariation, 0, 0));
+
+                return lines;
+            }
+        }
+
+        ArrayList<SearchResult> lines = null;
+
+        for (rootDepth = 1; rootDepth <= depth; rootDepth++) {
+            ArrayList<SearchResult> iteration = searchRoot();
+
+            // an interrupted iteration is only used if there is nothing else
+            if (stopped && lines != null)
+                break;
+
+            lines = iteration;
+
+            if (stopped)
+                break;
+
+            if (listener != null)
+                listener.iterationCompleted(lines);
+
+            // mate or stalemate, a deeper search finds nothing new
+            if (lines.get(0).getBestMove() == null)
+                break;
+        }
+
+        return lines;
+    }
+
+    /**
+     * Searches all moves of the current position with the depth of the current iteration.
+     * With more than one line every root move gets the full window, so all of their scores are exact.
+     *
+     * @return the lines of the iteration, the best move first
+     */
+    private ArrayList<SearchResult> searchRoot() {
+        nodes++;
+        principalVariationLength[0] = 0;
+
         moveGenerator.findMovesAndCaptures();
         moveGenerator.removeInvalidMoves();
 
@@ -44,29 +332,42 @@ public class Engine {
 
         Move bestMove = null;
         ArrayList<Move> currentList;
+        ArrayList<SearchResult> candidates = new ArrayList<>();
 
-        for (int i = 0; i < 2; i++) {
+        for (int i = 0; i < 2 && !isStopped(); i++) {
             if (i == 0) currentList = captures;
             else currentList = moves;
 
             if (!currentList.isEmpty())
                 for (var c : currentList) {
                     board.executeMove(c);
-                    currentScore = search(depth, bestWhiteScore, bestBlackScore);
+                    if (multiPv > 1)
+                        currentScore = search(rootDepth, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                    else
+                        currentScore = search(rootDepth, bestWhiteScore, bestBlackScore);
                     board.reverseMove(c);
+
+                    if (isStopped())
+                        break;
+
+                    if (multiPv > 1)
+                        candidates.add(new SearchResult(c, currentScore, getRootLine(c), 0, rootDepth));
+
                     if (board.getWhosTurn() == ChessColor.WHITE) {
-                        if (currentScore > bestScore || currentScore == bestScore && Math.random() < 0.5) {
+                        if (currentScore > bestScore || currentScore == bestScore && isTieWon()) {
                             bestMove = c;
                             bestScore = currentScore;
                             bestWhiteScore = Math.max(bestWhiteScore, currentScore);
+                            updatePrincipalVariation(0, c);
                             //if (bestBlackScore <= bestWhiteScore)
                             //    break;
                         }
                     } else {
-                        if (currentScore < bestScore || currentScore == bestScore && Math.random() < 0.5) {
+                        if (currentScore < bestScore || currentScore == bestScore && isTieWon()) {
                             bestMove = c;
                             bestScore = currentScore;
                             bestBlackScore = Math.min(bestBlackScore, currentScore);
+                            updatePrincipalVariation(0, c);
                             //if (bestBlackScore <= bestWhiteScore)
                             //    break;
                         }
@@ -74,13 +375,63 @@ public class Engine {
                 }
         }
 
-        if (bestMove != null)
-            board.executeMove(bestMove);
-        else {
-            System.err.println(captures.size() + " " + moves.size());
-            System.err.println("Was unable to move");
-            board.changeWhosTurn();
-        }
+        if (bestMove == null && !isStopped())
+            bestScore = getMateOrStalemateScore(0);
+
+        ArrayList<Move> principalVariation = new ArrayList<>();
+        for (int i = 0; i < principalVariationLength[0]; i++)
+            principalVariation.add(this.principalVariation[0][i]);
+
+        ArrayList<SearchResult> lines = new ArrayList<>();
+        lines.add(new SearchResult(bestMove, bestScore, principalVariation, nodes, rootDepth));
+
+        // the best move keeps its random tie-break, the other lines follow by score
+        if (board.getWhosTurn() == ChessColor.WHITE)
+            candidates.sort((a, b) -> Integer.compare(b.getScore(), a.getScore()));
+        else
+            candidates.sort((a, b) -> Integer.compare(a.getScore(), b.getScore()));
+
+        for (var line : candidates)
+            if (lines.size() < multiPv && line.getBestMove() != bestMove)
+                lines.add(new SearchResult(line.getBestMove(), line.getScore(), line.getPrincipalVariation(), nodes, rootDepth));
+
+        return lines;
+    }
+
+    /**
+     * Decides whether a move with the same score as the best move replaces it.
+     *
+     * @return true if the new move is taken, never if the choice is disabled
+     */
+    private boolean isTieWon() {
+        return random != null && random.nextBoolean();
+    }
+
+    /**
+     * Returns whether the search has to stop. The first iteration is cheap and runs to the end, so a stopped search
+     * still has a best move.
+     *
+     * @return true if the search is stopped and not in its first iteration
+     */
+    private boolean isStopped() {
+        return stopped && rootDepth > 1;
+    }
+
+    /**
+     * Returns a root move followed by the principal variation found below it.
+     * Has to be called right after the search of the move.
+     *
+     * @param move the root move
+     * @return     the line of the move
+     */
+    private ArrayList<Move> getRootLine(Move move) {
+        ArrayList<Move> line = new ArrayList<>();
+        line.add(move);
+
+        for (int i = 1; i < principalVariationLength[1]; i++)
+            line.add(principalVariation[1][i]);
+
+        return line;
     }
 
     /**
@@ -92,8 +443,58 @@ public class Engine {
      * @return               the value of the move
      */
     public int search(int depth, int bestWhiteScore, int bestBlackScore) {
+        nodes++;
+        int ply = rootDepth - depth + 1;
+        principalVariationLength[ply] = ply;
+
+        if (nodeLimit > 0 && nodes > nodeLimit)
+            stopped = true;
+
+        if (isStopped())
+            return 0;
+
+        // a repeated position is scored as draw, searching it again would only lead back to it
+        if (board.isRepetition() || board.hasInsufficientMaterial())
+            return 0;
+
+        // mate distance pruning, a mate found closer to the root can't be beaten from here
+        int mateScore = MATE_SCORE - ply;
+        int upperBound = board.getWhosTurn() == ChessColor.WHITE ? mateScore - 1 : mateScore;
+        int lowerBound = board.getWhosTurn() == ChessColor.WHITE ? -mateScore : -mateScore + 1;
+
+        if (upperBound < bestWhiteScore)
+            return upperBound;
+        if (lowerBound > bestBlackScore)
+            return lowerBound;
+
+        // probe right after captures and pawn moves, the position then is new to the tables
+        if (board.getNoPawnMoveOrCaptureCounter() == 0 && canProbeTablebase()) {
+            int wdl = tablebase.probeWdl(board, moveGenerator);
+
+            if (wdl != Tablebase.PROBE_FAILED)
+                return getTablebaseScore(wdl, ply);
+        }
+
         if (--depth == 0)
-            return evaluator.getScore();
+            return board.getNoPawnMoveOrCaptureCounter() >= 100 ? 0 : evaluate();
+
+        long key = 0;
+
+        if (transpositionTable != null) {
+            key = board.getZobristKey();
+            long entry = transpositionTable.get(key);
+
+            // the replies to the root moves are always searched, so every line shows at least the expected reply
+            if (ply > 1 && entry != TranspositionTable.NOT_FOUND && TranspositionTable.getDepth(entry) >= depth) {
+                int score = fromTableScore(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER_BOUND && score >= bestBlackScore
+                        || bound == TranspositionTable.UPPER_BOUND && score <= bestWhiteScore)
+                    return score;
+            }
+        }
 
         moveGenerator.findMovesAndCaptures();
         moveGenerator.removeInvalidMoves();
@@ -101,8 +502,17 @@ public class Engine {
         ArrayList<Move> captures = moveGenerator.getLastGeneratedCaptures();
         ArrayList<Move> moves = moveGenerator.getLastGeneratedMoves();
 
+        if (captures.isEmpty() && moves.isEmpty())
+            return getMateOrStalemateScore(ply);
+
+        // 50-move rule, checked after mate since a mate with the last move still counts
+        if (board.getNoPawnMoveOrCaptureCounter() >= 100)
+            return 0;
+
         int bestScore = board.getWhosTurn() == ChessColor.WHITE ? Integer.MIN_VALUE : Integer.MAX_VALUE;
         int currentscore;
+        int windowWhiteScore = bestWhiteScore;
+        int windowBlackScore = bestBlackScore;
 
         ArrayList<Move> currentList;
 
@@ -115,17 +525,23 @@ public class Engine {
                     board.executeMove(c);
                     currentscore = search(depth, bestWhiteScore, bestBlackScore);
                     board.reverseMove(c);
+
+                    if (isStopped())
+                        return 0;
+
                     if (board.getWhosTurn() == ChessColor.WHITE) {
-                        if (currentscore > bestScore || currentscore == bestScore && Math.random() < 0.5) {
+                        if (currentscore > bestScore || currentscore == bestScore && isTieWon()) {
                             bestScore = currentscore;
                             bestWhiteScore = Math.max(bestWhiteScore, currentscore);
+                            updatePrincipalVariation(ply, c);
                             //if (bestBlackScore <= bestWhiteScore)
                             //    break;
                         }
                     } else {
-                        if (currentscore < bestScore || currentscore == bestScore && Math.random() < 0.5) {
+                        if (currentscore < bestScore || currentscore == bestScore && isTieWon()) {
                             bestScore = currentscore;
                             bestBlackScore = Math.min(bestBlackScore, currentscore);
+                            updatePrincipalVariation(ply, c);
                             //if (bestBlackScore <= bestWhiteScore)
                             //    break;
                         }
@@ -133,6 +549,128 @@ public class Engine {
                 }
         }
 
+        if (transpositionTable != null) {
+            int bound = TranspositionTable.EXACT;
+
+            if (bestScore <= windowWhiteScore)
+                bound = TranspositionTable.UPPER_BOUND;
+            else if (bestScore >= windowBlackScore)
+                bound = TranspositionTable.LOWER_BOUND;
+
+            transpositionTable.put(key, TranspositionTable.pack(toTableScore(bestScore, ply), depth, bound));
+        }
+
         return bestScore;
     }
+
+    /**
+     * Converts mate and tablebase scores from the distance to the root into the distance to the position,
+     * so they stay valid when the position is found at another ply.
+     *
+     * @param score the score from the view of white
+     * @param ply   the distance to the root
+     * @return      the score to store in the transposition table
+     */
+    private static int toTableScore(int score, int ply) {
+        if (score >= TABLEBASE_WIN_SCORE - 2 * MAX_PLY)
+            return score + ply;
+        if (score <= -TABLEBASE_WIN_SCORE + 2 * MAX_PLY)
+            return score - ply;
+
+        return score;
+    }
+
+    /**
+     * Converts a score of the transposition table back into the distance to the root.
+     *
+     * @param score the stored score
+     * @param ply   the distance to the root
+     * @return      the score from the view of white
+     */
+    private static int fromTableScore(int score, int ply) {
+        if (score >= TABLEBASE_WIN_SCORE - 2 * MAX_PLY)
+            return score - ply;
+        if (score <= -TABLEBASE_WIN_SCORE + 2 * MAX_PLY)
+            return score + ply;
+
+        return score;
+    }
+
+    /**
+     * Returns the score of the evaluator, looked up in the evaluation cache if possible.
+     *
+     * @return the score of the position from the view of white
+     */
+    private int evaluate() {
+        if (evalCache == null)
+            return evaluator.getScore();
+
+        long key = board.getZobristKey();
+        int score = evalCache.get(key);
+
+        if (score == EvalCache.NOT_FOUND) {
+            score = evaluator.getScore();
+            evalCache.put(key, score);
+        }
+
+        return score;
+    }
+
+    /**
+     * Makes the move followed by the principal variation of the next ply the principal variation of this ply.
+     *
+     * @param ply  the distance to the root
+     * @param move the new best move at this ply
+     */
+    private void updatePrincipalVariation(int ply, Move move) {
+        principalVariation[ply][ply] = move;
+
+        for (int i = ply + 1; i < principalVariationLength[ply + 1]; i++)
+            principalVariation[ply][i] = principalVariation[ply + 1][i];
+
+        principalVariationLength[ply] = principalVariationLength[ply + 1];
+    }
+
+    /**
+     * Returns the score of a position without legal moves from the view of white.
+     * Uses the threats of the last move generation, so it has to be called right after it.
+     *
+     * @param ply the distance to the root
+     * @return    the mate score, higher for mates closer to the root, or 0 for stalemate
+     */
+    private int getMateOrStalemateScore(int ply) {
+        if (!moveGenerator.isKingInCheck())
+            return 0;
+
+        return board.getWhosTurn() == ChessColor.WHITE ? -MATE_SCORE + ply : MATE_SCORE - ply;
+    }
+
+    /**
+     * Returns true if tablebases are set and the position has few enough pieces and no castling rights.
+     *
+     * @return true if the position can be looked up in the tablebases
+     */
+    private boolean canProbeTablebase() {
+        return tablebase != null && board.getPieceCount() <= tablebase.getMaxPieces() && !board.hasCastlingRights();
+    }
+
+    /**
+     * Converts a WDL value of the side to move into a score from the view of white.
+     * Wins found closer to the root get a higher score, wins and losses spoiled by the 50-move rule count as draws.
+     *
+     * @param wdl the WDL value of the side to move
+     * @param ply the distance to the root
+     * @return    the score of the position
+     */
+    private int getTablebaseScore(int wdl, int ply) {
+        int score;
+
+        switch (wdl) {
+            case Tablebase.WDL_WIN: score = TABLEBASE_WIN_SCORE - ply; break;
+            case Tablebase.WDL_LOSS: score = -TABLEBASE_WIN_SCORE + ply; break;
+            default: score = 0;
+        }
+
+        return board.getWhosTurn() == ChessColor.WHITE ? score : -score;
+    }
 }
@@ -0,0 +1,57 @@
+package chess.model;
+
+/**
+ * A small cache for the scores of the evaluator, keyed on the Zobrist hash of the position.
+ * Each entry is a single long with the upper half of the key and the score, so reading and writing an entry is atomic
+ * and the cache can be shared by several threads without locks. Entries are simply overwritten when their slot is needed.
+ */
+public class EvalCache {
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private long[] entries;
+    private int mask;
+
+    /**
+     * Creates a cache with the largest power of two number of entries that fits into the given size.
+     *
+     * @param kilobytes the size of the cache in kilobytes
+     */
+    public EvalCache(int kilobytes) {
+        long size = Math.max(1, (long) kilobytes * 1024 / 8);
+        int entryCount = Integer.highestOneBit((int) Math.min(size, 1 << 30));
+
+        entries = new long[entryCount];
+        mask = entryCount - 1;
+    }
+
+    /**
+     * Returns the size of the cache.
+     *
+     * @return the size in kilobytes
+     */
+    public int getKilobytes() {
+        return (int) ((long) entries.length * 8 / 1024);
+    }
+
+    /**
+     * Returns the stored score of a position, or NOT_FOUND if it is not in the cache.
+     *
+     * @param key the Zobrist hash of the position
+     * @return    the score from the view of white, NOT_FOUND if not found
+     */
+    public int get(long key) {
+        long entry = entries[(int) key & mask];
+
+        return (entry & 0xFFFFFFFF00000000L) == (key & 0xFFFFFFFF00000000L) ? (int) entry : NOT_FOUND;
+    }
+
+    /**
+     * Stores the score of a position, replacing the previous entry in its slot.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param score the score from the view of white
+     */
+    public void put(long key, int score) {
+        entries[(int) key & mask] = key & 0xFFFFFFFF00000000L | score & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,88 @@
+package chess.model;
+
+/**
+ * The dense loops of the evaluation: the sum of the tile scores and the layers of the neural network.
+ * There is a plain Java implementation and one with the JDK Vector API, which is only used if it was compiled,
+ * the module jdk.incubator.vector is present and the CPU has vectors of at least 256 bits.
+ */
+public interface EvaluationKernels {
+
+    /**
+     * Returns the sum of the table values at the given indices.
+     *
+     * @param table   the values
+     * @param indices the indices into the table
+     * @return        the sum
+     */
+    int gatherSum(int[] table, int[] indices);
+
+    /**
+     * Adds a row of weights to an accumulator.
+     *
+     * @param accumulator       the accumulators
+     * @param accumulatorOffset the start of the accumulator to change
+     * @param weights           the weights
+     * @param weightOffset      the start of the row of weights
+     * @param length            the number of values
+     */
+    void add(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length);
+
+    /**
+     * Subtracts a row of weights from an accumulator.
+     *
+     * @param accumulator       the accumulators
+     * @param accumulatorOffset the start of the accumulator to change
+     * @param weights           the weights
+     * @param weightOffset      the start of the row of weights
+     * @param length            the number of values
+     */
+    void subtract(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length);
+
+    /**
+     * Returns the dot product of the accumulator clamped to 0..max and a row of weights. The sum is an int,
+     * the caller makes sure that max times the sum of the absolute weights fits into it.
+     *
+
+     * @param accumulator       the accumulators
+     * @param accumulatorOffset the start of the accumulator
+     * @param weights           the weights
+     * @param weightOffset      the start of the row of weights
+     * @param length            the number of values
+     * @param max               the upper limit of the accumulator values
+     * @return                  the dot product
+     */
+    int clippedDot(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length, int max);
+
+    /**
+     * Returns the kernels selected when the class was loaded.
+     *
+     * @return the fastest available kernels
+     */
+    static EvaluationKernels get() {
+        return Holder.KERNELS;
+    }
+
+    /**
+     * Returns the kernels with the Vector API if they can be loaded, the plain Java kernels otherwise.
+     * The Vector API can be turned off with the system property "chess.vector=false".
+     *
+     * @return the fastest available kernels
+     */
+    static EvaluationKernels load() {
+        if (!"false".equals(System.getProperty("chess.vector")))
+            try {
+                return (EvaluationKernels) Class.forName("chess.model.VectorEvaluationKernels").getConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // not compiled, module not added or vectors too short, use the scalar loops
+            }
+
+        return new ScalarEvaluationKernels();
+    }
+
+    /**
+     * Selects the kernels once, on first use.
+     */
+    class Holder {
+        private static final EvaluationKernels KERNELS = load();
+    }
+}
@@ -0,0 +1,247 @@
+package chess.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Reads and writes sets of evaluation parameters as versioned JSON files.
+ * A file is an object with the field "version" and one array per parameter group of the Evaluator,
+ * for example {"version": 1, "pieceValues": [100, 325, 325, 500, 1050, 40000], ...}.
+ */
+public final class EvaluationParameters {
+    public static final int VERSION = 1;
+
+    private EvaluationParameters() {
+    }
+
+    /**
+     * Reads and validates a parameter file. Every group of the Evaluator has to be present with the right number of values.
+     *
+     * @param file the parameter file
+     * @return     the parameters in the order of Evaluator.PARAMETER_GROUPS
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the file is no valid parameter set
+     */
+    public static int[] read(Path file) throws IOException {
+        HashMap<String, int[]> groups = new Parser(Files.readString(file)).parseObject();
+
+        int[] version = groups.remove("version");
+        if (version == null || version.length != 1 || version[0] != VERSION)
+            throw new IllegalArgumentException("Unsupported parameter file version, expected " + VERSION);
+
+        int[] parameters = new int[Evaluator.PARAMETER_COUNT];
+        int i = 0;
+
+        for (int group = 0; group < Evaluator.PARAMETER_GROUPS.length; group++) {
+            int[] values = groups.remove(Evaluator.PARAMETER_GROUPS[group]);
+
+            if (values == null)
+                throw new IllegalArgumentException("Missing parameter group " + Evaluator.PARAMETER_GROUPS[group]);
+            if (values.length != Evaluator.PARAMETER_GROUP_SIZES[group])
+                throw new IllegalArgumentException("Parameter group " + Evaluator.PARAMETER_GROUPS[group] + " needs "
+                        + Evaluator.PARAMETER_GROUP_SIZES[group] + " values, got " + values.length);
+
+            System.arraycopy(values, 0, parameters, i, values.length);
+            i += values.length;
+        }
+
+        if (!groups.isEmpty())
+            throw new IllegalArgumentException("Unknown parameter groups " + groups.keySet());
+
+        for (int type = 0; type < 6; type++)
+            if (parameters[type] <= 0)
+                throw new IllegalArgumentException("Piece values have to be positive");
+
+        return parameters;
+    }
+
+    /**
+     * Writes the parameters with the current version, one array per parameter group.
+     *
+     * @param file       the parameter file
+     * @param parameters the parameters in the order of Evaluator.PARAMETER_GROUPS
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, int[] parameters) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("{\n  \"version\": " + VERSION);
+            int i = 0;
+
+            for (int group = 0; group < Evaluator.PARAMETER_GROUPS.length; group++) {
+                writer.write(",\n  \"" + Evaluator.PARAMETER_GROUPS[group] + "\": [");
+
+                for (int j = 0; j < Evaluator.PARAMETER_GROUP_SIZES[group]; j++) {
+                    if (j > 0)
+                        writer.write(j % 8 == 0 ? ",\n    " : ", ");
+                    else if (Evaluator.PARAMETER_GROUP_SIZES[group] == 64)
+                        writer.write("\n    ");
+
+                    writer.write(Integer.toString(parameters[i++]));
+                }
+
+                writer.write("]");
+            }
+
+            writer.write("\n}\n");
+        }
+    }
+
+    /**
+     * Parses the subset of JSON used by parameter files: one object whose values are integers or arrays of integers.
+     */
+    private static class Parser {
+        private String text;
+        private int position;
+
+        /**
+         * Sets the text to parse.
+         *
+         * @param text the JSON text
+         */
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Parses the object of the file.
+         *
+         * @return the values of each field, a single integer as array of length one
+         */
+        private HashMap<String, int[]> parseObject() {
+            HashMap<String, int[]> fields = new HashMap<>();
+            expect('{');
+
+            if (peek() == '}') {
+                position++;
+                return fields;
+            }
+
+            do {
+                String name = parseString();
+                expect(':');
+
+                if (fields.put(name, peek() == '[' ? parseArray() : new int[]{ parseInteger() }) != null)
+                    throw error("Duplicate field " + name);
+            } while (skip(','));
+
+            expect('}');
+
+            if (peek() != 0)
+                throw error("Unexpected text after the object");
+
+            return fields;
+        }
+
+        /**
+         * Parses an array of integers.
+         *
+         * @return the integers
+         */
+        private int[] parseArray() {
+            int[] values = new int[64];
+            int size = 0;
+            expect('[');
+
+            if (peek() != ']')
+                do {
+                    if (size == values.length)
+                        values = Arrays.copyOf(values, size * 2);
+
+                    values[size++] = parseInteger();
+                } while (skip(','));
+
+            expect(']');
+
+            return Arrays.copyOf(values, size);
+        }
+
+        /**
+         * Parses a string without escape sequences.
+         *
+         * @return the string
+         */
+        private String parseString() {
+            expect('"');
+            int end = text.indexOf('"', position);
+
+            if (end == -1)
+                throw error("Unterminated string");
+
+            String string = text.substring(position, end);
+            position = end + 1;
+
+            return string;
+        }
+
+        /**
+         * Parses an integer.
+         *
+         * @return the integer
+         */
+        private int parseInteger() {
+            peek();
+            int start = position;
+
+            if (position < text.length() && text.charAt(position) == '-')
+                position++;
+            while (position < text.length() && Character.isDigit(text.charAt(position)))
+                position++;
+
+            try {
+                return Integer.parseInt(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("Expected an integer");
+            }
+        }
+
+        /**
+         * Skips whitespace and returns the next character, 0 at the end of the text.
+         *
+         * @return the next character
+         */
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        /**
+         * Skips the character if it is next.
+         *
+         * @param c the character
+         * @return  true if it was skipped
+         */
+        private boolean skip(char c) {
+            if (peek() != c)
+                return false;
+
+            position++;
+            return true;
+        }
+
+        /**
+         * Skips the character, which has to be next.
+         *
+         * @param c the character
+         */
+        private void expect(char c) {
+            if (!skip(c))
+                throw error("Expected '" + c + "'");
+        }
+
+        /**
+         * Creates an exception with the position of the error.
+         *
+         * @param message the description of the error
+         * @return        the exception
+         */
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at character " + position + " of parameter file");
+        }
+    }
+}
@@ -3,16 +3,28 @@ package chess.model;
 import chess.controller.ChessColor;
 import chess.controller.PieceType;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Evaluates boards.
  */
 public class Evaluator {
+    public static final String[] PARAMETER_GROUPS = { "pieceValues", "pawnPositionScores", "knightPositionScores",
+            "bishopPositionScores", "rookPositionScores", "queenPositionScores", "kingPositionScores", "pawnStructure", "passedPawnBonus" };
+    public static final int[] PARAMETER_GROUP_SIZES = { 6, 64, 64, 64, 64, 64, 64, 3, 8 };
+    public static final int PARAMETER_COUNT = 6 + 6 * 64 + 3 + 8;
+
+    private static final EvaluationKernels KERNELS = EvaluationKernels.get();
+
     private Board board;
-    private HashMap<PieceType, Integer> pieceHash;
-    private HashMap<PieceType, Integer> pieceValues;
+    private int[] pieceValues;
     private int[][][] position_score;
+    private int[] tileScores;
+    private int doubledPawnPenalty;
+    private int isolatedPawnPenalty;
+    private int backwardPawnPenalty;
+    private int[] passedPawnBonus;
+    private PawnHashTable pawnHashTable;
 
     /**
      * Default constructor.
@@ -22,37 +34,277 @@ public class Evaluator {
     public Evaluator(Board board) {
         this.board = board;
 
-        pieceHash = new HashMap<>();
-        pieceHash.put(PieceType.PAWN, 0);
-        pieceHash.put(PieceType.KNIGHT, 1);
-        pieceHash.put(PieceType.BISHOP, 2);
-        pieceHash.put(PieceType.ROOK, 3);
-        pieceHash.put(PieceType.QUEEN, 4);
-        pieceHash.put(PieceType.KING, 5);
-
         initPieceValues();
         initPositionScores();
+        initTileScores();
+        initPawnStructureScores();
+        pawnHashTable = new PawnHashTable(256);
+    }
+
+    /**
+     * Creates an evaluator for a copied board. The piece values and position scores are shared.
+     *
+     * @param board the copied Board
+     * @param other the evaluator of the original board
+     */
+    public Evaluator(Board board, Evaluator other) {
+        this.board = board;
+        pieceValues = other.pieceValues;
+        position_score = other.position_score;
+        tileScores = other.tileScores;
+        doubledPawnPenalty = other.doubledPawnPenalty;
+        isolatedPawnPenalty = other.isolatedPawnPenalty;
+        backwardPawnPenalty = other.backwardPawnPenalty;
+        passedPawnBonus = other.passedPawnBonus;
+        pawnHashTable = other.pawnHashTable;
     }
 
     /**
      * Returns the score of the Board.
-     * Piece values and the values of their position are taken into account.
+     * Piece values and the values of their position are taken into account, unless the board uses a neural network.
      *
      * @return the score of the Board
      */
     public int getScore() {
-        int whiteScore = 0;
-        int blackScore = 0;
+        if (board.getNetworkAccumulator() != null)
+            return board.getNetworkAccumulator().evaluate(board.getWhosTurn());
 
-        for (var list : board.getPieceList())
-            for (var piece : list)
-                if (piece.isActive())
-                    if (piece.getColor() == ChessColor.WHITE)
-                        whiteScore += pieceValues.get(piece.getType()) + position_score[0][pieceHash.get(piece.getType())][piece.getTile()];
-                    else
-                        blackScore += pieceValues.get(piece.getType()) + position_score[0][pieceHash.get(piece.getType())][piece.getTile()];
+        return KERNELS.gatherSum(tileScores, board.getTileFeatures()) + getPawnStructureScore();
+    }
 
-        return whiteScore - blackScore;
+    /**
+     * Returns the score of the pawn structure, looked up in the pawn hash table if there is one.
+     * Passed pawns with an empty tile in front of them get half of their bonus again.
+     *
+     * @return the score of the pawns from the view of white
+     */
+    private int getPawnStructureScore() {
+        long key = board.getPawnKey();
+        long entry = pawnHashTable == null ? PawnHashTable.NOT_FOUND : pawnHashTable.get(key);
+
+        if (entry == PawnHashTable.NOT_FOUND && pawnHashTable == null)
+            entry = evaluatePawnStructure();
+        else if (entry == PawnHashTable.NOT_FOUND) {
+            entry = evaluatePawnStructure();
+            pawnHashTable.put(key, entry);
+        }
+
+        int score = PawnHashTable.getScore(entry);
+        long passedPawns = PawnHashTable.getPassedPawns(entry);
+
+        while (passedPawns != 0) {
+            int index = Long.numberOfTrailingZeros(passedPawns);
+            passedPawns &= passedPawns - 1;
+
+            ChessColor color = board.getColor(index);
+            int front = color == ChessColor.WHITE ? index - 8 : index + 8;
+
+            if (board.isTileEmpty(front))
+                score += (color == ChessColor.WHITE ? 1 : -1) * passedPawnBonus[board.getAdvancement(color, index)] / 2;
+        }
+
+        return score;
+    }
+
+    /**
+     * Sets the pawn hash table, null to evaluate the pawn structure every time.
+     * Entries of the table are only valid for the current parameters.
+     *
+     * @param pawnHashTable the pawn hash table
+     */
+    public void setPawnHashTable(PawnHashTable pawnHashTable) {
+        this.pawnHashTable = pawnHashTable;
+    }
+
+    /**
+     * Returns all evaluation parameters as one array, in the order of PARAMETER_GROUPS.
+     * Position scores are given from the view of white, black uses them mirrored.
+     *
+     * @return a new array with the parameters
+     */
+    public int[] getParameters() {
+        int[] parameters = new int[PARAMETER_COUNT];
+        int i = 0;
+
+        for (int j = 0; j < 6; j++)
+            parameters[i++] = pieceValues[j];
+
+        for (int j = 0; j < 6; j++)
+            for (int index = 0; index < 64; index++)
+                parameters[i++] = position_score[0][j][index];
+
+        parameters[i++] = doubledPawnPenalty;
+        parameters[i++] = isolatedPawnPenalty;
+        parameters[i++] = backwardPawnPenalty;
+
+        for (int j = 0; j < 8; j++)
+            parameters[i++] = passedPawnBonus[j];
+
+        return parameters;
+    }
+
+    /**
+     * Changes a single evaluation parameter in place, which is much faster than setting all of them.
+     * Only to be used on an evaluator without copies and without pawn hash table, since the tables are not replaced.
+     *
+     * @param index the index of the parameter in the order of PARAMETER_GROUPS
+     * @param value the new value
+     */
+    public void setParameter(int index, int value) {
+        if (index < 6) {
+            pieceValues[index] = value;
+
+            for (int tile = 0; tile < 64; tile++)
+                updateTileScores(index, tile);
+        } else if (index < 6 + 6 * 64) {
+            int type = (index - 6) / 64;
+            int tile = (index - 6) % 64;
+
+            position_score[0][type][tile] = value;
+            position_score[1][type][tile ^ 56] = value;
+            updateTileScores(type, tile);
+            updateTileScores(type, tile ^ 56);
+        } else if (index == 6 + 6 * 64)
+            doubledPawnPenalty = value;
+        else if (index == 7 + 6 * 64)
+            isolatedPawnPenalty = value;
+        else if (index == 8 + 6 * 64)
+            backwardPawnPenalty = value;
+        else
+            passedPawnBonus[index - 9 - 6 * 64] = value;
+    }
+
+    /**
+     * Sets all evaluation parameters from one array, in the order of PARAMETER_GROUPS.
+     * Tables shared with copies of this evaluator are replaced, not changed, and the pawn hash table is cleared.
+     *
+     * @param parameters the parameters
+     */
+    public void setParameters(int[] parameters) {
+        if (parameters.length != PARAMETER_COUNT)
+            throw new IllegalArgumentException("Expected " + PARAMETER_COUNT + " parameters, got " + parameters.length);
+
+        int i = 0;
+
+        pieceValues = new int[6];
+        for (int j = 0; j < 6; j++)
+            pieceValues[j] = parameters[i++];
+
+        position_score = new int[2][6][64];
+        for (int j = 0; j < 6; j++)
+            for (int index = 0; index < 64; index++)
+                position_score[0][j][index] = parameters[i++];
+        mirrorPositionScores();
+        initTileScores();
+
+        doubledPawnPenalty = parameters[i++];
+        isolatedPawnPenalty = parameters[i++];
+        backwardPawnPenalty = parameters[i++];
+
+        passedPawnBonus = new int[8];
+        for (int j = 0; j < 8; j++)
+            passedPawnBonus[j] = parameters[i++];
+
+        if (pawnHashTable != null)
+            pawnHashTable = new PawnHashTable(256);
+    }
+
+    /**
+     * Scores doubled, isolated, backward and passed pawns of both colors.
+     *
+     * @return the packed entry for the pawn hash table
+     */
+    private long evaluatePawnStructure() {
+        boolean[][] pawnTiles = new boolean[2][64];
+        int[][] pawnsPerColumn = new int[2][8];
+        // the rows of the pawns closest to row 0 and row 7 per column, row 0 is the 8th rank
+        int[][] minRow = new int[2][8];
+        int[][] maxRow = new int[2][8];
+
+        for (int c = 0; c < 2; c++) {
+            Arrays.fill(minRow[c], 8);
+            Arrays.fill(maxRow[c], -1);
+        }
+
+        for (int c = 0; c < 2; c++)
+            for (var piece : board.getPieceList().get(c))
+                if (piece.isActive() && piece.getType() == PieceType.PAWN) {
+                    int column = board.getColumn(piece.getTile());
+                    int row = board.getRow(piece.getTile());
+
+                    pawnTiles[c][piece.getTile()] = true;
+                    pawnsPerColumn[c][column]++;
+                    minRow[c][column] = Math.min(minRow[c][column], row);
+                    maxRow[c][column] = Math.max(maxRow[c][column], row);
+                }
+
+        int[] scores = new int[2];
+        long passedPawns = 0;
+
+        for (int c = 0; c < 2; c++) {
+            int opponent = 1 - c;
+            // white pawns move to lower rows
+            int forward = c == 0 ? -1 : 1;
+
+            for (int column = 0; column < 8; column++)
+                if (pawnsPerColumn[c][column] > 1)
+                    scores[c] -= doubledPawnPenalty * (pawnsPerColumn[c][column] - 1);
+
+            for (int index = 0; index < 64; index++) {
+                if (!pawnTiles[c][index])
+                    continue;
+
+                int column = board.getColumn(index);
+                int row = board.getRow(index);
+                boolean passed = true;
+                boolean isolated = true;
+                boolean backward = true;
+
+                for (int x = Math.max(0, column - 1); x <= Math.min(7, column + 1); x++) {
+                    // an opponent pawn in front of the pawn on this or a neighbouring column
+                    if (c == 0 ? minRow[opponent][x] < row : maxRow[opponent][x] > row)
+                        passed = false;
+
+                    if (x != column && pawnsPerColumn[c][x] > 0) {
+                        isolated = false;
+
+                        // an own pawn next to or behind the pawn can still protect it
+                        if (c == 0 ? maxRow[c][x] >= row : minRow[c][x] <= row)
+                            backward = false;
+                    }
+                }
+
+                if (passed) {
+                    scores[c] += passedPawnBonus[board.getAdvancement(c == 0 ? ChessColor.WHITE : ChessColor.BLACK, index)];
+                    passedPawns |= 1L << index;
+                }
+
+                if (isolated)
+                    scores[c] -= isolatedPawnPenalty;
+                else if (backward && isStopTileAttacked(pawnTiles[opponent], column, row + forward, forward))
+                    scores[c] -= backwardPawnPenalty;
+            }
+        }
+
+        return PawnHashTable.pack(scores[0] - scores[1], passedPawns);
+    }
+
+    /**
+     * Returns true if the tile in front of a pawn is attacked by an opponent pawn.
+     *
+     * @param opponentPawns the tiles of the opponent pawns
+     * @param column        the column of the pawn
+     * @param stopRow       the row in front of the pawn
+     * @param forward       the row direction the pawn moves in
+     * @return              true if an opponent pawn attacks the tile
+     */
+    private boolean isStopTileAttacked(boolean[] opponentPawns, int column, int stopRow, int forward) {
+        int attackerRow = stopRow + forward;
+
+        if (attackerRow < 0 || attackerRow > 7)
+            return false;
+
+        return column > 0 && opponentPawns[attackerRow * 8 + column - 1] || column < 7 && opponentPawns[attackerRow * 8 + column + 1];
     }
 
     /**
@@ -60,32 +312,42 @@ public class Evaluator {
      */
     private void initPieceValues() {
         // https://chess.stackexchange.com/questions/5941/what-relative-point-values-of-pieces-do-engines-use
-        pieceValues = new HashMap<>();
+        pieceValues = new int[6];
 
-        pieceValues.put(PieceType.PAWN, 100);
-        pieceValues.put(PieceType.KNIGHT, 325);
-        pieceValues.put(PieceType.BISHOP, 325);
-        pieceValues.put(PieceType.ROOK, 500);
-        pieceValues.put(PieceType.QUEEN, 1050);
-        pieceValues.put(PieceType.KING, 40000);
+        pieceValues[PieceType.PAWN.ordinal()] = 100;
+        pieceValues[PieceType.KNIGHT.ordinal()] = 325;
+        pieceValues[PieceType.BISHOP.ordinal()] = 325;
+        pieceValues[PieceType.ROOK.ordinal()] = 500;
+        pieceValues[PieceType.QUEEN.ordinal()] = 1050;
+        pieceValues[PieceType.KING.ordinal()] = 40000;
 
         /*
-        pieceValues.put(PieceType.PAWN, 126);
-        pieceValues.put(PieceType.KNIGHT, 781);
-        pieceValues.put(PieceType.BISHOP, 825);
-        pieceValues.put(PieceType.ROOK, 1276);
-        pieceValues.put(PieceType.QUEEN, 2538);
-        pieceValues.put(PieceType.KING, 15000);
+        pieceValues[PieceType.PAWN.ordinal()] = 126;
+        pieceValues[PieceType.KNIGHT.ordinal()] = 781;
+        pieceValues[PieceType.BISHOP.ordinal()] = 825;
+        pieceValues[PieceType.ROOK.ordinal()] = 1276;
+        pieceValues[PieceType.QUEEN.ordinal()] = 2538;
+        pieceValues[PieceType.KING.ordinal()] = 15000;
         */
     }
 
+    /**
+     * Sets the penalties for weak pawns and the bonus for passed pawns by advancement.
+     */
+    private void initPawnStructureScores() {
+        doubledPawnPenalty = 12;
+        isolatedPawnPenalty = 14;
+        backwardPawnPenalty = 8;
+        passedPawnBonus = new int[]{ 0, 8, 12, 20, 35, 60, 100, 0 };
+    }
+
     /**
      * Sets the values of the positions for each piece type.
      */
     private void initPositionScores() {
         position_score = new int[2][6][64];
 
-        position_score[0][pieceHash.get(PieceType.PAWN)] = new int[]{
+        position_score[0][PieceType.PAWN.ordinal()] = new int[]{
                 0, 0, 0, 0, 0, 0, 0, 0,
                 100, 100, 100, 100, 100, 100, 100, 100,
                 4, 8, 10, 16, 16, 10, 8, 4,
@@ -95,7 +357,7 @@ public class Evaluator {
                 0, 2, 4, -12, -12, 4, 2, 0,
                 0, 0, 0, 0, 0, 0, 0, 0 };
 
-        position_score[0][pieceHash.get(PieceType.KNIGHT)] = new int[]{
+        position_score[0][PieceType.KNIGHT.ordinal()] = new int[]{
                 -150, -20, -10, -5, -5, -10, -20, -150,
                 -20, -10, -2, 0, 0, -2, -10, -20,
                 -10, -2, 4, 6, 6, 4, -2, -10,
@@ -105,7 +367,7 @@ public class Evaluator {
                 -16, -6, -2, 0, 0, -2, -6, -16,
                 -30, -20, -10, -8, -8, -10, -20, -30 };
 
-        position_score[0][pieceHash.get(PieceType.BISHOP)] = new int[]{
+        position_score[0][PieceType.BISHOP.ordinal()] = new int[]{
                 -10, -10, -10, -10, -10, -10, -10, -10,
                 -10, 4, 4, 4, 4, 4, 4, -10,
                 2, 4, 6, 6, 6, 6, 4, 2,
@@ -115,7 +377,7 @@ public class Evaluator {
                 0, 4, 4, 4, 4, 4, 4, 0,
                 -10, -10, -12, -10, -10, -12, -10, -10 };
 
-        position_score[0][pieceHash.get(PieceType.ROOK)] = new int[]{
+        position_score[0][PieceType.ROOK.ordinal()] = new int[]{
                 10, 10, 10, 10, 10, 10, 10, 10,
                 20, 20, 20, 20, 20, 20, 20, 20,
                 0, 0, 0, 0, 0, 0, 0, 0,
@@ -125,7 +387,7 @@ public class Evaluator {
                 0, 0, 0, 0, 0, 0, 0, 0,
                 4, 4, 4, 6, 6, 4, 4, 4 };
 
-        position_score[0][pieceHash.get(PieceType.QUEEN)] = new int[]{
+        position_score[0][PieceType.QUEEN.ordinal()] = new int[]{
                 -10, -10, 2, 2, 2, 2, -10, -10,
                 -10, -10, 2, 2, 2, 2, -10, -10,
                 2, 2, 2, 3, 3, 2, 2, 2,
@@ -135,7 +397,7 @@ public class Evaluator {
                 -10, 2, 2, 2, 2, 2, 2, -10,
                 -10, -10, -6, -4, -4, -6, -10, -10 };
 
-        position_score[0][pieceHash.get(PieceType.KING)] = new int[]{
+        position_score[0][PieceType.KING.ordinal()] = new int[]{
                 -48, -48, -48, -48, -48, -48, -48, -48,
                 -48, -48, -48, -48, -48, -48, -48, -48,
                 -48, -48, -48, -48, -48, -48, -48, -48,
@@ -145,8 +407,38 @@ public class Evaluator {
                 15, 20, -25, -30, -30, -25, 20, 15,
                 20, 20, 20, -40, 10, -60, 20, 20 };
 
+        mirrorPositionScores();
+    }
+
+    /**
+     * Combines piece values and position scores into one table with the score of every tile feature of the board,
+     * white scores positive and black scores negative, so the material and position score is a sum over the tiles.
+     */
+    private void initTileScores() {
+        tileScores = new int[13 * 64];
+
+        for (int type = 0; type < 6; type++)
+            for (int tile = 0; tile < 64; tile++)
+                updateTileScores(type, tile);
+    }
+
+    /**
+     * Updates the scores of both colors for a piece type on a tile.
+     *
+     * @param type the ordinal of the piece type
+     * @param tile the index of the tile
+     */
+    private void updateTileScores(int type, int tile) {
+        tileScores[(1 + type) * 64 + tile] = pieceValues[type] + position_score[0][type][tile];
+        tileScores[(7 + type) * 64 + tile] = -pieceValues[type] - position_score[1][type][tile];
+    }
+
+    /**
+     * Sets the position scores of black by mirroring the rows of the position scores of white.
+     */
+    private void mirrorPositionScores() {
         for (int i = 0; i < 64; i++)
             for (int j = 0; j < 6; j++)
-                position_score[1][j][i] = position_score[0][j][63 - i];
+                position_score[1][j][i] = position_score[0][j][i ^ 56];
     }
 }
@@ -17,7 +17,7 @@ public class King extends Piece {
      */
     public King(Board board, ChessColor color, int tile) {
         super(board, color, PieceType.KING, tile);
-        lookupTable = getBoard().getLookupTables().getKing();
+        lookupTable = LookupTables.getKing();
     }
 
     @Override
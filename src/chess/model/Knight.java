@@ -17,7 +17,7 @@ public class Knight extends Piece {
      */
     public Knight(Board board, ChessColor color, int tile) {
         super(board, color, PieceType.KNIGHT, tile);
-        lookupTable = getBoard().getLookupTables().getKnight();
+        lookupTable = LookupTables.getKnight();
     }
 
     @Override
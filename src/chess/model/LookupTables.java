@@ -1,24 +1,25 @@
 package chess.model;
 
 /**
- * Creates lookup tables of possible moves for different piece types.
+ * Lookup tables of possible moves for different piece types and of the coordinates and names of the tiles.
+ * They only depend on the geometry of the board, so they are computed once per JVM when the class is loaded
+ * and shared by all boards. The returned arrays must not be changed.
  */
 public class LookupTables {
-    private Board board;
-    private int[][] knight;
-    private int[][] bishop;
-    private int[][] rook;
-    private int[][] queen;
-    private int[][] king;
-
-    /**
-     * Calls for each lookup table to be computed.
-     *
-     * @param board the board Object
-     */
-    public LookupTables(Board board) {
-        this.board = board;
-
+    private static final String COLUMN_NAMES = "ABCDEFGH";
+
+    private static final int[] column = new int[64];
+    private static final int[] row = new int[64];
+    private static final int[][] advancement = new int[2][64];
+    private static final String[] tileNames = new String[64];
+    private static final int[][] knight = new int[64][9];
+    private static final int[][] bishop = new int[64][5];
+    private static final int[][] rook = new int[64][5];
+    private static final int[][] queen = new int[64][9];
+    private static final int[][] king = new int[64][9];
+
+    static {
+        computeTiles();
         computeKnight();
         computeBishop();
         computeRook();
@@ -27,15 +28,34 @@ public class LookupTables {
     }
 
     /**
-     * Generates the lookup table for the knight.
+     * Not used, all tables are static.
      */
-    private void computeKnight() {
-        knight = new int[64][9];
+    private LookupTables() {
+    }
+
+    /**
+     * Generates column, row, advancement and name of each tile. Index 0 is A8, index 63 is H1.
+     * The advancement ranges from 0-7, black gets the highest value at row 1, white at row 8.
+     */
+    private static void computeTiles() {
+        for (int i = 0; i < 64; i++) {
+            column[i] = i % 8;
+            row[i] = i / 8;
+            advancement[0][i] = (63 - i) / 8;
+            advancement[1][i] = i / 8;
+            // no string concatenation, its first use bootstraps method handles and makes every start slower
+            tileNames[i] = new String(new char[] {COLUMN_NAMES.charAt(i % 8), (char) ('8' - i / 8)});
+        }
+    }
 
+    /**
+     * Generates the lookup table for the knight.
+     */
+    private static void computeKnight() {
         for (int i = 0; i < 64; i++) {
             int m = 0;
-            int column = board.getColumn(i);
-            int row = board.getRow(i);
+            int column = LookupTables.column[i];
+            int row = LookupTables.row[i];
 
             if (row < 6 && column < 7) knight[i][m++] = i + 17;
             if (row < 7 && column < 6) knight[i][m++] = i + 10;
@@ -53,15 +73,13 @@ public class LookupTables {
     /**
      * Generates the lookup table for the bishop.
      */
-    private void computeBishop() {
-        bishop = new int[64][5];
-
+    private static void computeBishop() {
         for (int i = 0; i < 64; i++) {
             for (int m = 0; m < 5; m++)
                 bishop[i][m] = -1;
 
-            int column = board.getColumn(i);
-            int row = board.getRow(i);
+            int column = LookupTables.column[i];
+            int row = LookupTables.row[i];
 
             if (column < 7 && row < 7) bishop[i][0] = i + 9;
             if (column < 7 && row > 0) bishop[i][1] = i - 7;
@@ -73,15 +91,13 @@ public class LookupTables {
     /**
      * Generates the lookup table for the rook.
      */
-    private void computeRook() {
-        rook = new int[64][5];
-
+    private static void computeRook() {
         for (int i = 0; i < 64; i++) {
             for (int m = 0; m < 5; m++)
                 rook[i][m] = -1;
 
-            int column = board.getColumn(i);
-            int row = board.getRow(i);
+            int column = LookupTables.column[i];
+            int row = LookupTables.row[i];
 
             if (row < 7) rook[i][0] = i + 8;
             if (column < 7) rook[i][1] = i + 1;
@@ -93,15 +109,13 @@ public class LookupTables {
     /**
      * Generates the lookup table for the queen.
      */
-    private void computeQueen() {
-        queen = new int[64][9];
-
+    private static void computeQueen() {
         for (int i = 0; i < 64; i++) {
             for (int m = 0; m < 9; m++)
                 queen[i][m] = -1;
 
-            int column = board.getColumn(i);
-            int row = board.getRow(i);
+            int column = LookupTables.column[i];
+            int row = LookupTables.row[i];
 
             if (row < 7) queen[i][0] = i + 8;
             if (column < 7 && row < 7) queen[i][1] = i + 9;
@@ -117,13 +131,11 @@ public class LookupTables {
     /**
      * Generates the lookup table for the king.
      */
-    private void computeKing() {
-        king = new int[64][9];
-
+    private static void computeKing() {
         for (int i = 0; i < 64; i++) {
             int m = 0;
-            int column = board.getColumn(i);
-            int row = board.getRow(i);
+            int column = LookupTables.column[i];
+            int row = LookupTables.row[i];
 
             if(column > 0) king[i][m++] = i - 1;
             if(column < 7) king[i][m++] = i + 1;
@@ -139,48 +151,104 @@ public class LookupTables {
     }
 
     /**
-     * Returns the lookup table for the knight
+     * Returns the lookup table for the knight. The array is shared by all pieces, callers must not write to it.
      *
      * @return the lookup table for the knight
      */
-    public int[][] getKnight() {
+    public static int[][] getKnight() {
         return knight;
     }
 
-
     /**
-     * Returns the lookup table for the bishop
+     * Returns the lookup table for the bishop. The array is shared by all pieces, callers must not write to it.
      *
      * @return the lookup table for the bishop
      */
-    public int[][] getBishop() {
+    public static int[][] getBishop() {
         return bishop;
     }
 
     /**
-     * Returns the lookup table for the rook.
+     * Returns the lookup table for the rook. The array is shared by all pieces, callers must not write to it.
      *
      * @return the lookup table for the rook
      */
-    public int[][] getRook() {
+    public static int[][] getRook() {
         return rook;
     }
 
     /**
-     * Returns the lookup table for the queen.
+     * Returns the lookup table for the queen. The array is shared by all pieces, callers must not write to it.
      *
      * @return the lookup table for the queen
      */
-    public int[][] getQueen() {
+    public static int[][] getQueen() {
         return queen;
     }
 
     /**
-     * Returns the lookup table for the king.
+     * Returns the lookup table for the king. The array is shared by all pieces, callers must not write to it.
      *
      * @return the lookup table for the king
      */
-    public int[][] getKing() {
+    public static int[][] getKing() {
         return king;
     }
+
+    /**
+     * Returns the column of a tile.
+     *
+     * @param index the index of the tile
+     * @return      the column, 0 for A
+     */
+    public static int getColumn(int index) {
+        return column[index];
+    }
+
+    /**
+     * Returns the row of a tile.
+     *
+     * @param index the index of the tile
+     * @return      the row, 0 for the eighth rank
+     */
+    public static int getRow(int index) {
+        return row[index];
+    }
+
+    /**
+     * Returns how far a tile is advanced for a color.
+     *
+     * @param color the index of the color, 0 for white
+     * @param index the index of the tile
+     * @return      the advancement, 0-7
+     */
+    public static int getAdvancement(int color, int index) {
+        return advancement[color][index];
+    }
+
+    /**
+     * Returns the name of a tile, for example "A8" for 0.
+     *
+     * @param index the index of the tile
+     * @return      the name of the tile
+     */
+    public static String getTileName(int index) {
+        return tileNames[index];
+    }
+
+    /**
+     * Returns the index of a tile name, for example 0 for "A8". Computed from the characters, so no map is needed.
+     *
+     * @param name the name of the tile in upper case
+     * @return     the index of the tile, -1 if the name is not a tile
+     */
+    public static int getTileIndex(String name) {
+        if (name == null || name.length() != 2)
+            return -1;
+
+        int x = COLUMN_NAMES.indexOf(name.charAt(0));
+        int y = '8' - name.charAt(1);
+
+        return x < 0 || y < 0 || y > 7 ? -1 : x + y * 8;
+    }
 }
@@ -4,143 +4,469 @@ import chess.controller.ChessColor;
 import chess.controller.MoveHistory;
 import chess.controller.PieceType;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.StringTokenizer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The Model class. Takes commands from/gives updates to Controller.
  */
 public class Model {
-    private int[] column;
-    private int[] row;
-    private int[][] advancement;
-    private String[] tileNames;
-    private HashMap<String, Integer> indexNameHash;
-    private HashMap<Integer, String> nameIndexHash;
     private Board board;
     private MoveGenerator moveGenerator;
     private Evaluator evaluator;
     private MoveHistory moveHistory;
     private int depth;
     private Engine engine;
+    private boolean ponder;
+    private Model ponderModel;
+    private Move ponderMove;
+    private Move expectedReply;
+    private CompletableFuture<SearchResult> ponderSearch;
+    private SearchListener searchListener;
+    private long[] legalDestinations;
+    private Move[] legalMoves;
+    private boolean legalMovesIndexed;
 
 private HashMap<ChessColor, Integer> colorHash;
 
     /**
-     * Calls method to put pieces on their starting points and calls for the first half step to be generated or received.
+     * Calls method to put pieces on their starting points and generates the legal moves. The first half step is
+     * started by the caller with nextHalfStep, so nothing is searched before the user interface is shown.
+     * While the human thinks, the engine ponders unless the system property "chess.ponder=false" or a seed is set,
+     * a seeded search starts with an empty transposition table and could not use the pondering.
      */
     public Model() {
+        init();
+        ponder = !"false".equals(System.getProperty("chess.ponder")) && !engine.isSeeded();
+        setupBoard();
+        generateLegalMoves();
+    }
+
+    /**
+     * Creates a model with the position of a FEN string. No half step is started, so the engine can be used
+     * without the user interface.
+     *
+     * @param fen the FEN string of the position
+     */
+    public Model(String fen) {
+        init();
+        loadFen(fen);
+    }
+
+    /**
+     * Creates an independent copy of a model for another thread. The evaluation weights and caches are shared,
+     * the pieces are copied. The transposition table is shared too, unless the engine is seeded, then the copy gets
+     * an empty table of its own, so its searches don't depend on those of other threads. The memory of the table is
+     * only taken by the first search of the copy. The copy only knows the last move of the history, which is enough
+     * for en passant, so it can't take back moves made before the copy.
+     *
+     * @param other the model to copy
+     */
+    public Model(Model other) {
+        colorHash = other.colorHash;
+
+        moveHistory = new MoveHistory(this);
+        board = new Board(this, moveHistory, other.board);
+        moveGenerator = new MoveGenerator(board, moveHistory, other.moveGenerator);
+        evaluator = new Evaluator(board, other.evaluator);
+        depth = other.engine.getDepth();
+        engine = new Engine(board, moveGenerator, evaluator, depth);
+        engine.setTablebase(other.engine.getTablebase());
+        engine.setEvalCache(other.engine.getEvalCache());
+        TranspositionTable table = other.engine.getTranspositionTable();
+        engine.setTranspositionTable(table != null && other.engine.isSeeded() ? new TranspositionTable(table) : table);
+        engine.copyRandom(other.engine);
+
+        copyLastMove(other);
+    }
+
+    /**
+     * Takes over the position of another model, like the copy constructor, but keeps the board, move generator and
+     * engine of this model, so a model can be reused for many searches. The index of the legal moves is only
+     * invalidated, a search generates its own moves.
+     *
+     * @param other the model to copy
+     */
+    public void copyPosition(Model other) {
+        board.copyPosition(other.board);
+        moveHistory.clear();
+        copyLastMove(other);
+        legalMovesIndexed = false;
+    }
+
+    /**
+     * Adds the last move of another model to the history, which is enough for en passant.
+     * The board has to be a copy of the board of the other model.
+     *
+     * @param other the model that was copied
+     */
+    private void copyLastMove(Model other) {
+        ArrayList<Move> history = other.moveHistory.getMoveHistory();
+        if (!history.isEmpty()) {
+            Move lastMove = history.get(history.size() - 1);
+            moveHistory.addMoveToHistory(new Move(lastMove.getStart(), lastMove.getDestination(),
+                    board.getCopiedPiece(other.board, lastMove.getPiece()), board.getCopiedPiece(other.board, lastMove.getTarget()),
+                    lastMove.getNoPawnMoveOrCaptureCounter()));
+        }
+    }
+
+    /**
+     * Creates the board and the engine.
+     * The size of the evaluation cache in kilobytes can be set with the system property "chess.evalcache",
+     * the size of the transposition table in megabytes with "chess.hash". With "chess.seed" the choice between
+     * moves with the same score depends only on the seed and the position, "chess.seed=none" disables it.
+     */
+    private void init() {
         colorHash = new HashMap<>();
         colorHash.put(ChessColor.WHITE, 0);
         colorHash.put(ChessColor.BLACK, 1);
 
-        initColumn();
-        initRow();
-        initAdvancement();
-        generateTileNames();
-        generateNameTiles();
-
         moveHistory = new MoveHistory(this);
         board = new Board(this, moveHistory);
         moveGenerator = new MoveGenerator(board, moveHistory);
         evaluator = new Evaluator(board);
         depth = 4;
         engine = new Engine(board, moveGenerator, evaluator, depth);
+        engine.setEvalCache(new EvalCache(Integer.getInteger("chess.evalcache", 1024)));
+        engine.setTranspositionTable(new TranspositionTable(Integer.getInteger("chess.hash", 16)));
+        initSeed();
+        initEvaluationParameters();
+        initNetwork();
+        initTablebase();
+    }
 
-        setupBoard();
-        nextHalfStep();
+    /**
+     * Seeds or disables the choice between moves with the same score if the system property "chess.seed" is set.
+     */
+    private void initSeed() {
+        String seed = System.getProperty("chess.seed");
+        if (seed == null)
+            return;
+
+        if (seed.equals("none"))
+            engine.setRandom(null);
+        else
+            try {
+                engine.setSeed(Long.parseLong(seed));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid seed " + seed);
+            }
+    }
+
+    /**
+     * Evaluates with the neural network of the weights file given with the system property "chess.nnue".
+     * The file is read once per JVM and the network is shared by all models.
+     */
+    private void initNetwork() {
+        if (StartupNetwork.NETWORK != null)
+            board.setNetwork(StartupNetwork.NETWORK);
+    }
+
+    /**
+     * Uses the evaluation parameters of the file given with the system property "chess.evalparams".
+     * The file is read once per JVM, the built-in parameters are kept if it can't be used.
+     */
+    private void initEvaluationParameters() {
+        if (StartupParameters.PARAMETERS != null)
+            evaluator.setParameters(StartupParameters.PARAMETERS);
+    }
+
+    /**
+     * Evaluates with a neural network from a weights file. Copies made afterwards use it as well, copies made before
+     * keep the previous evaluation and its cache.
+     *
+     * @param path the weights file
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file is not a valid network
+     */
+    public void loadNetwork(Path path) throws IOException {
+        board.setNetwork(Network.load(path));
+        replaceEvalCache();
+    }
+
+    /**
+     * Replaces the evaluation parameters by those of a file written by the tuner. Copies made afterwards use them as
+     * well, copies made before keep the previous parameters and their cache.
+     *
+     * @param path the parameter file
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file does not contain valid parameters
+     */
+    public void loadEvaluationParameters(Path path) throws IOException {
+        evaluator.setParameters(EvaluationParameters.read(path));
+        replaceEvalCache();
+    }
+
+    /**
+     * Gives the engine an empty evaluation cache of the same size, since the cached scores belong to the previous
+     * evaluation. The old cache is not cleared, copies made before still use it.
+     */
+    private void replaceEvalCache() {
+        EvalCache evalCache = engine.getEvalCache();
+
+        if (evalCache != null)
+            engine.setEvalCache(new EvalCache(evalCache.getKilobytes()));
+    }
+
+    /**
+     * Probes the endgame tablebases of the directory given with the system property "chess.syzygy".
+     * The directory is opened once per JVM, all models share its open tables.
+     */
+    private void initTablebase() {
+        engine.setTablebase(StartupTablebase.TABLEBASE);
     }
 
     /**
      * Generates moves and captures, then removes invalid moves. This is used for move highlighting in the UI and end game detection.
-     * If it is not the turn of the human, Engine gets called to generate the next move as a CompletableFuture.
+     * If it is the turn of the human, the engine starts pondering. If it is the turn of the engine, the caller starts
+     * its search with searchEngineMove.
      */
     public void nextHalfStep() {
-        moveGenerator.findMovesAndCaptures();
-        moveGenerator.removeInvalidMoves();
+        generateLegalMoves();
 
         System.out.println(moveGenerator.getLastGeneratedMoves().size() + " " + moveGenerator.getLastGeneratedCaptures().size());
         if (moveGenerator.getLastGeneratedMoves().size() + moveGenerator.getLastGeneratedCaptures().size() == 0)
             System.out.println("no moves possible");
 
-        if (board.getWhosTurn() == ChessColor.BLACK) {
-            CompletableFuture<Void> completableFuture = CompletableFuture.runAsync(engine::move);
+        if (board.getWhosTurn() == ChessColor.WHITE && ponder)
+            startPondering();
+    }
 
-            CompletableFuture<Void> future = completableFuture
-                    .thenRun(() -> nextHalfStep());
+    /**
+     * Returns true if the engine has to make the next move.
+     *
+     * @return true if it is the turn of the engine
+     */
+    public boolean isEngineTurn() {
+        return board.getWhosTurn() == ChessColor.BLACK;
+    }
+
+    /**
+     * Sets the listener that gets the progress of the searches of the engine, null for none.
+     * It is called by the searching thread.
+     *
+     * @param searchListener the listener
+     */
+    public void setSearchListener(SearchListener searchListener) {
+        this.searchListener = searchListener;
+    }
+
+    /**
+     * Starts the search of the engine without blocking. The search works on a copy of the board,
+     * so the board stays unchanged and can be shown while the engine thinks.
+     * The move has to be played with executeEngineMove on the thread that owns the board.
+     *
+     * @return the future move of the engine on this board, null if the engine has no legal move
+     */
+    public CompletableFuture<Move> searchEngineMove() {
+        return CompletableFuture.supplyAsync(this::findEngineMove);
+    }
+
+    /**
+     * Plays the move found by searchEngineMove and starts the next half step.
+     *
+     * @param move the move of the engine, null if it has no legal move
+     */
+    public void executeEngineMove(Move move) {
+        if (move != null)
+            board.executeMove(move);
+        else {
+            System.err.println("Was unable to move");
+            board.changeWhosTurn();
+        }
+
+        nextHalfStep();
+    }
+
+    /**
+     * Searches on a copy of the board while the human thinks, so the transposition table is filled when the engine
+     * has to move. If the last search predicted a reply, the copy plays it and searches the answer to it,
+     * otherwise it searches the current position to cover all replies.
+     */
+    private void startPondering() {
+        ponderModel = new Model(this);
+        ponderMove = null;
+
+        if (expectedReply != null) {
+            ponderModel.generateLegalMoves();
+            ponderMove = ponderModel.findAndGetMove(expectedReply.getStart(), expectedReply.getDestination());
+
+            if (ponderMove != null)
+                ponderModel.board.executeMove(ponderMove);
+        }
+
+        // a thread of its own, so the pondering never holds up the move of the engine in the common pool
+        ponderSearch = CompletableFuture.supplyAsync(ponderModel.engine::findBestMove, task -> {
+            Thread thread = new Thread(task, "ponder");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Ends the pondering and returns its result if the human played the expected reply.
+     * On a ponder hit the search keeps running until it is complete, so the time spent pondering counts.
+     * Otherwise the search is stopped and only its entries in the transposition table are used.
+     *
+     * @return the result of the pondering, null on a ponder miss
+     */
+    private SearchResult stopPondering() {
+        if (ponderSearch == null)
+            return null;
+
+        ArrayList<Move> history = moveHistory.getMoveHistory();
+        Move lastMove = history.isEmpty() ? null : history.get(history.size() - 1);
+        boolean ponderHit = ponderMove != null && lastMove != null && lastMove.getStart() == ponderMove.getStart()
+                && lastMove.getDestination() == ponderMove.getDestination();
+
+        // repeated, since a stop right at the start of the pondering could come before the engine resets its flag
+        while (!ponderHit && !ponderSearch.isDone()) {
+            ponderModel.engine.stop();
 
             try {
-                future.get();
+                ponderSearch.get(10, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // checked again by the loop
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
             }
         }
+
+        SearchResult result = ponderSearch.join();
+        ponderSearch = null;
+        ponderModel = null;
+
+        return ponderHit ? result : null;
     }
 
     /**
-     * If a piece at the given index has access to the destination index, returns true, otherwise false.
+     * Finds the move of the engine, using the result of the pondering on a ponder hit.
+     * The principal variation gives the expected reply of the human for the next pondering.
+     * Only reads the moves generated by the last half step, the board is left unchanged.
      *
-     * @param startIndex       index of the start
-     * @param destinationIndex index of the destination
-     * @return                 yes if start can move to destination, false if not
+     * @return the move of the engine on this board, null if the engine has no legal move
      */
-    public boolean hasPieceAccessToTile(int startIndex, int destinationIndex) {
-        return findAndGetMove(startIndex, destinationIndex) != null;
+    private Move findEngineMove() {
+        SearchResult result = stopPondering();
+
+        if (result == null || result.getBestMove() == null) {
+            Model copy = new Model(this);
+            copy.engine.setSearchListener(searchListener);
+
+            // the searches of this model never overlap, so a seeded copy can clear the table of this model
+            if (engine.isSeeded())
+                copy.engine.setTranspositionTable(engine.getTranspositionTable());
+
+            result = copy.engine.findBestMove();
+        } else if (searchListener != null) {
+            ArrayList<SearchResult> lines = new ArrayList<>();
+            lines.add(result);
+            searchListener.iterationCompleted(lines);
+        }
+
+        expectedReply = result.getPrincipalVariation().size() > 1 ? result.getPrincipalVariation().get(1) : null;
+
+        // the moves of the search belong to the copy of the board
+        return result.getBestMove() == null ? null : findAndGetMove(result.getBestMove().getStart(), result.getBestMove().getDestination());
     }
 
     /**
-     * If a piece at the given index has access to the destination index, returns true, otherwise false.
-     *
-     * @param startIndex       index of the start
-     * @param destinationIndex index of the destination
-     * @return                 yes if start can move to destination, false if not
+     * Generates the legal moves of the player whose turn it is and indexes them by start and destination,
+     * so the queries of the user interface and the validation of moves don't have to search the move lists.
      */
-    public Move findAndGetMove(int startIndex, int destinationIndex) {
-        for (var m : moveGenerator.getLastGeneratedMoves())
-            if (startIndex == m.getStart() && destinationIndex == m.getDestination())
-                return m;
+    public void generateLegalMoves() {
+        if (legalMoves == null) {
+            legalDestinations = new long[64];
+            legalMoves = new Move[64 * 64];
+        }
+
+        // only the entries of the last moves are set
+        for (int start = 0; start < 64; start++) {
+            for (long destinations = legalDestinations[start]; destinations != 0; destinations &= destinations - 1)
+                legalMoves[start * 64 + Long.numberOfTrailingZeros(destinations)] = null;
+
+            legalDestinations[start] = 0;
+        }
+
+        moveGenerator.findMovesAndCaptures();
+        moveGenerator.removeInvalidMoves();
 
         for (var m : moveGenerator.getLastGeneratedCaptures())
-            if (startIndex == m.getStart() && destinationIndex == m.getDestination())
-                return m;
+            indexLegalMove(m);
+
+        for (var m : moveGenerator.getLastGeneratedMoves())
+            indexLegalMove(m);
 
-        return null;
+        legalMovesIndexed = true;
     }
 
     /**
-     * Generates the value of the column for each tile index.
+     * Adds a legal move to the index.
+     *
+     * @param move the legal move
      */
-    private void initColumn() {
-        column = new int[64];
+    private void indexLegalMove(Move move) {
+        legalDestinations[move.getStart()] |= 1L << move.getDestination();
+        legalMoves[move.getStart() * 64 + move.getDestination()] = move;
+    }
 
-        for (int i = 0; i < 64; i++)
-            column[i] = i % 8;
+    /**
+     * Returns the tiles the piece on the start tile can move to, found by the last call of generateLegalMoves.
+     * After a new position was loaded or copied, the legal moves are generated first.
+     *
+     * @param startIndex the index of the start
+     * @return           the destinations, one bit per tile index
+     */
+    public long getLegalDestinations(int startIndex) {
+        if (startIndex < 0 || startIndex > 63)
+            return 0;
+
+        if (!legalMovesIndexed)
+            generateLegalMoves();
+
+        return legalDestinations[startIndex];
     }
 
     /**
-     * Generates the value of the row for each tile index.
+     * Returns the tiles changed since the last call, so the user interface only has to update those.
+     *
+     * @return the changed tiles, one bit per tile index
      */
-    private void initRow() {
-        row = new int[64];
+    public long takeChangedTiles() {
+        return board.takeChangedTiles();
+    }
 
-        for (int i = 0; i < 64; i++)
-            row[i] = i / 8;
+    /**
+     * If a piece at the given index has access to the destination index, returns true, otherwise false.
+     *
+     * @param startIndex       index of the start
+     * @param destinationIndex index of the destination
+     * @return                 yes if start can move to destination, false if not
+     */
+    public boolean hasPieceAccessToTile(int startIndex, int destinationIndex) {
+        return findAndGetMove(startIndex, destinationIndex) != null;
     }
 
     /**
-     * Creates the advancement lookup table for white and black.
-     * Value ranges from 0-7. Black gets highest score at row 1, white at row 8.
+     * Returns the legal move from the start to the destination index, found by the last call of generateLegalMoves.
+     *
+     * @param startIndex       index of the start
+     * @param destinationIndex index of the destination
+     * @return                 the move, null if start can't move to destination
      */
-    private void initAdvancement() {
-        advancement = new int[2][64];
+    public Move findAndGetMove(int startIndex, int destinationIndex) {
+        if (destinationIndex < 0 || destinationIndex > 63 || (getLegalDestinations(startIndex) >>> destinationIndex & 1) == 0)
+            return null;
 
-        for (int i = 0; i < 64; i++) {
-            advancement[0][i] = (63 - i) / 8;
-            advancement[1][i] = i / 8;
-        }
+        return legalMoves[startIndex * 64 + destinationIndex];
     }
 
     /**
@@ -150,7 +476,7 @@ private HashMap<ChessColor, Integer> colorHash;
      * @return  the column
      */
     public int getColumn(int i) {
-        return column[i];
+        return LookupTables.getColumn(i);
     }
 
     /**
@@ -160,7 +486,7 @@ private HashMap<ChessColor, Integer> colorHash;
      * @return  the row
      */
     public int getRow(int i) {
-        return row[i];
+        return LookupTables.getRow(i);
     }
 
     /**
@@ -171,38 +497,7 @@ private HashMap<ChessColor, Integer> colorHash;
      * @return      the advancement value
      */
     public int getAdvancement(ChessColor color, int index) {
-        return advancement[colorHash.get(color)][index];
-    }
-
-    /**
-     * Generates the HashMap to convert tile names to tile indexes.
-     * For example, "A8" returns 0.
-     */
-    private void generateTileNames() {
-        String coloumnNames = "ABCDEFGH";
-        tileNames = new String[64];
-        indexNameHash = new HashMap<>();
-
-
-        for (int y = 0; y < 8; y++)
-            for (int x = 0; x < 8; x++)
-                tileNames[x + y * 8] = coloumnNames.charAt(x) + "" + (8 - y);
-
-        for (int i = 0; i < 64; i++)
-                indexNameHash.put(tileNames[i], i);
-    }
-
-    /**
-     * Generates the HashMap to convert tile indexes to tile names.
-     * For example, 0 returns "A8".
-     */
-    private void generateNameTiles() {
-        String coloumnNames = "ABCDEFGH";
-        nameIndexHash = new HashMap<>();
-
-        for (int y = 0; y < 8; y++)
-            for (int x = 0; x < 8; x++)
-                nameIndexHash.put(x + y * 8, coloumnNames.charAt(x) + "" + (8 - y));
+        return LookupTables.getAdvancement(colorHash.get(color), index);
     }
 
     /**
@@ -212,7 +507,7 @@ private HashMap<ChessColor, Integer> colorHash;
      * @return         the index of the tile
      */
     public int tileNameToIndex(String tileName) {
-        return indexNameHash.get(tileName);
+        return LookupTables.getTileIndex(tileName);
     }
 
     /**
@@ -222,7 +517,7 @@ private HashMap<ChessColor, Integer> colorHash;
      * @return      the name of the tile
      */
     public String indexToTileName(int index) {
-        return nameIndexHash.get(index);
+        return LookupTables.getTileName(index);
     }
 
     /**
@@ -233,28 +528,236 @@ private HashMap<ChessColor, Integer> colorHash;
             board.clear();
 
         for (int i = 0; i < 8; i++)
-            board.addPiece(PieceType.PAWN, ChessColor.WHITE, indexNameHash.get("A2") + i);
+            board.addPiece(PieceType.PAWN, ChessColor.WHITE, tileNameToIndex("A2") + i);
 
-        board.addPiece(PieceType.ROOK, ChessColor.WHITE, indexNameHash.get("A1"));
-        board.addPiece(PieceType.KNIGHT, ChessColor.WHITE, indexNameHash.get("B1"));
-        board.addPiece(PieceType.BISHOP, ChessColor.WHITE, indexNameHash.get("C1"));
-        board.addPiece(PieceType.QUEEN, ChessColor.WHITE, indexNameHash.get("D1"));
-        board.addPiece(PieceType.KING, ChessColor.WHITE, indexNameHash.get("E1"));
-        board.addPiece(PieceType.BISHOP, ChessColor.WHITE, indexNameHash.get("F1"));
-        board.addPiece(PieceType.KNIGHT, ChessColor.WHITE, indexNameHash.get("G1"));
-        board.addPiece(PieceType.ROOK, ChessColor.WHITE, indexNameHash.get("H1"));
+        board.addPiece(PieceType.ROOK, ChessColor.WHITE, tileNameToIndex("A1"));
+        board.addPiece(PieceType.KNIGHT, ChessColor.WHITE, tileNameToIndex("B1"));
+        board.addPiece(PieceType.BISHOP, ChessColor.WHITE, tileNameToIndex("C1"));
+        board.addPiece(PieceType.QUEEN, ChessColor.WHITE, tileNameToIndex("D1"));
+        board.addPiece(PieceType.KING, ChessColor.WHITE, tileNameToIndex("E1"));
+        board.addPiece(PieceType.BISHOP, ChessColor.WHITE, tileNameToIndex("F1"));
+        board.addPiece(PieceType.KNIGHT, ChessColor.WHITE, tileNameToIndex("G1"));
+        board.addPiece(PieceType.ROOK, ChessColor.WHITE, tileNameToIndex("H1"));
 
         for (int i = 0; i < 8; i++)
-            board.addPiece(PieceType.PAWN, ChessColor.BLACK, indexNameHash.get("A7") + i);
+            board.addPiece(PieceType.PAWN, ChessColor.BLACK, tileNameToIndex("A7") + i);
+
+        board.addPiece(PieceType.ROOK, ChessColor.BLACK, tileNameToIndex("A8"));
+        board.addPiece(PieceType.KNIGHT, ChessColor.BLACK, tileNameToIndex("B8"));
+        board.addPiece(PieceType.BISHOP, ChessColor.BLACK, tileNameToIndex("C8"));
+        board.addPiece(PieceType.QUEEN, ChessColor.BLACK, tileNameToIndex("D8"));
+        board.addPiece(PieceType.KING, ChessColor.BLACK, tileNameToIndex("E8"));
+        board.addPiece(PieceType.BISHOP, ChessColor.BLACK, tileNameToIndex("F8"));
+        board.addPiece(PieceType.KNIGHT, ChessColor.BLACK, tileNameToIndex("G8"));
+        board.addPiece(PieceType.ROOK, ChessColor.BLACK, tileNameToIndex("H8"));
+    }
+
+    /**
+     * Sets up the position of a FEN string. The fields after the piece placement are optional,
+     * so EPD lines (without move counters) are accepted as well.
+     *
+     * @param fen the FEN string of the position
+     * @throws IllegalArgumentException if the string does not describe a valid position
+     */
+    public void loadFen(String fen) {
+        legalMovesIndexed = false;
+
+        // split without regular expressions, setting them up is slow in a freshly started JVM
+        StringTokenizer tokenizer = new StringTokenizer(fen);
+        String[] fields = new String[Math.max(1, tokenizer.countTokens())];
+        fields[0] = "";
+        for (int i = 0; tokenizer.hasMoreTokens(); i++)
+            fields[i] = tokenizer.nextToken();
+
+        String[] rows = fields[0].split("/");
+
+        if (rows.length != 8)
+            throw new IllegalArgumentException("FEN needs 8 rows: " + fen);
+
+        board.clear();
+        moveHistory.clear();
+
+        for (int y = 0; y < 8; y++) {
+            int x = 0;
+
+            for (var c : rows[y].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    x += c - '0';
+                    continue;
+                }
+
+                if (x > 7 || "PNBRQKpnbrqk".indexOf(c) == -1)
+                    throw new IllegalArgumentException("Invalid row " + rows[y] + " in FEN: " + fen);
+
+                ChessColor color = Character.isUpperCase(c) ? ChessColor.WHITE : ChessColor.BLACK;
+                board.addPiece(PieceType.values()["PNBRQK".indexOf(Character.toUpperCase(c))], color, x++ + y * 8);
+            }
+
+            if (x != 8)
+                throw new IllegalArgumentException("Invalid row " + rows[y] + " in FEN: " + fen);
+        }
+
+        if (board.getKing(ChessColor.WHITE) == null || board.getKing(ChessColor.BLACK) == null)
+            throw new IllegalArgumentException("FEN needs both kings: " + fen);
+
+        if (fields.length > 1 && fields[1].equals("b"))
+            board.changeWhosTurn();
+        else if (fields.length > 1 && !fields[1].equals("w"))
+            throw new IllegalArgumentException("Invalid color in FEN: " + fen);
+
+        // castling is allowed as long as king and rook never moved
+        String castling = fields.length > 2 ? fields[2] : "-";
+        removeCastlingRight(tileNameToIndex("E1"), castling.contains("K") || castling.contains("Q"));
+        removeCastlingRight(tileNameToIndex("H1"), castling.contains("K"));
+        removeCastlingRight(tileNameToIndex("A1"), castling.contains("Q"));
+        removeCastlingRight(tileNameToIndex("E8"), castling.contains("k") || castling.contains("q"));
+        removeCastlingRight(tileNameToIndex("H8"), castling.contains("k"));
+        removeCastlingRight(tileNameToIndex("A8"), castling.contains("q"));
+
+        // en passant is detected from the last move, so add the double step of the pawn to the history
+        if (fields.length > 3 && !fields[3].equals("-")) {
+            int enPassantTile = LookupTables.getTileIndex(fields[3].toUpperCase());
+            if (enPassantTile == -1)
+                throw new IllegalArgumentException("Invalid en passant tile in FEN: " + fen);
+
+            int direction = board.getWhosTurn() == ChessColor.WHITE ? 8 : -8;
+            Piece pawn = board.getTile(enPassantTile + direction);
+
+            if (pawn != null && pawn.getType() == PieceType.PAWN && pawn.getColor() != board.getWhosTurn())
+                moveHistory.addMoveToHistory(new Move(enPassantTile - direction, enPassantTile + direction, pawn, null, 0));
+        }
+
+        if (fields.length > 4 && isNumber(fields[4]))
+            board.setNoPawnMoveOrCaptureCounter(Integer.parseInt(fields[4]));
+        else
+            board.setNoPawnMoveOrCaptureCounter(0);
+    }
+
+    /**
+     * Returns whether a text only consists of digits, without the cost of a regular expression.
+     *
+     * @param text the text
+     * @return     true if the text is a non-negative number
+     */
+    private static boolean isNumber(String text) {
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) < '0' || text.charAt(i) > '9')
+                return false;
+
+        return !text.isEmpty();
+    }
+
+    /**
+     * Returns the FEN string of the current position. The move number is counted from the loaded position,
+     * since the board does not know the moves before it.
+     *
+     * @return the FEN string
+     */
+    public String getFen() {
+        StringBuilder fen = new StringBuilder();
+
+        for (int y = 0; y < 8; y++) {
+            int empty = 0;
+
+            for (int x = 0; x < 8; x++) {
+                Piece piece = board.getTile(x + y * 8);
+
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+
+                if (empty > 0)
+                    fen.append(empty);
+                empty = 0;
+
+                char c = "PNBRQK".charAt(piece.getType().ordinal());
+                fen.append(piece.getColor() == ChessColor.WHITE ? c : Character.toLowerCase(c));
+            }
+
+            if (empty > 0)
+                fen.append(empty);
+            if (y < 7)
+                fen.append('/');
+        }
+
+        fen.append(board.getWhosTurn() == ChessColor.WHITE ? " w " : " b ");
+
+        String castling = (board.hasCastlingRight(60, 63) ? "K" : "") + (board.hasCastlingRight(60, 56) ? "Q" : "")
+                + (board.hasCastlingRight(4, 7) ? "k" : "") + (board.hasCastlingRight(4, 0) ? "q" : "");
+        fen.append(castling.isEmpty() ? "-" : castling);
+
+        ArrayList<Move> history = moveHistory.getMoveHistory();
+        Move lastMove = history.isEmpty() ? null : history.get(history.size() - 1);
 
-        board.addPiece(PieceType.ROOK, ChessColor.BLACK, indexNameHash.get("A8"));
-        board.addPiece(PieceType.KNIGHT, ChessColor.BLACK, indexNameHash.get("B8"));
-        board.addPiece(PieceType.BISHOP, ChessColor.BLACK, indexNameHash.get("C8"));
-        board.addPiece(PieceType.QUEEN, ChessColor.BLACK, indexNameHash.get("D8"));
-        board.addPiece(PieceType.KING, ChessColor.BLACK, indexNameHash.get("E8"));
-        board.addPiece(PieceType.BISHOP, ChessColor.BLACK, indexNameHash.get("F8"));
-        board.addPiece(PieceType.KNIGHT, ChessColor.BLACK, indexNameHash.get("G8"));
-        board.addPiece(PieceType.ROOK, ChessColor.BLACK, indexNameHash.get("H8"));
+        if (lastMove != null && lastMove.getPiece().getType() == PieceType.PAWN && Math.abs(lastMove.getStart() - lastMove.getDestination()) == 16)
+            fen.append(' ').append(indexToTileName((lastMove.getStart() + lastMove.getDestination()) / 2).toLowerCase());
+        else
+            fen.append(" -");
+
+        return fen.append(' ').append(board.getNoPawnMoveOrCaptureCounter()).append(' ').append(1 + history.size() / 2).toString();
+    }
+
+    /**
+     * Marks the piece on the tile as moved, if it lost the right to castle.
+     *
+     * @param index     the index of the start tile of a king or rook
+     * @param hasRight  true if the FEN allows castling with this piece
+     */
+    private void removeCastlingRight(int index, boolean hasRight) {
+        if (!hasRight && board.getTile(index) != null && board.getTile(index).neverMoved())
+            board.getTile(index).increaseMoveCounter();
+    }
+
+    /**
+     * Returns the name of a move in coordinate notation, for example "e2e4" or "e7e8q" for a promotion.
+     *
+     * @param move the move
+     * @return     the name of the move
+     */
+    public String getMoveName(Move move) {
+        String name = (indexToTileName(move.getStart()) + indexToTileName(move.getDestination())).toLowerCase();
+
+        if (move.getPiece().getType() == PieceType.PAWN && getAdvancement(move.getPiece().getColor(), move.getDestination()) == 7)
+            name += "q";
+
+        return name;
+    }
+
+    /**
+     * Returns the board of this model.
+     *
+     * @return the board
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Returns the evaluator of this model, with the parameters loaded at startup.
+     *
+     * @return the evaluator
+     */
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * Returns the move generator of this model.
+     *
+     * @return the move generator
+     */
+    public MoveGenerator getMoveGenerator() {
+        return moveGenerator;
+    }
+
+    /**
+     * Returns the engine of this model.
+     *
+     * @return the engine
+     */
+    public Engine getEngine() {
+        return engine;
     }
 
     /**
@@ -296,6 +799,29 @@ private HashMap<ChessColor, Integer> colorHash;
         return board.getWhosTurn();
     }
 
+    /**
+     * Plays a move in coordinate notation. Pawns always promote to a queen, so a promotion needs the suffix "q"
+     * and other moves must not have one.
+     *
+     * @param name the move, for example "e2e4" or "e7e8q"
+     * @return     true if the move is legal
+     */
+    public boolean playMove(String name) {
+        if (!name.matches("[a-h][1-8][a-h][1-8]q?"))
+            return false;
+
+        generateLegalMoves();
+
+        Move m = findAndGetMove(tileNameToIndex(name.substring(0, 2).toUpperCase()), tileNameToIndex(name.substring(2, 4).toUpperCase()));
+        if (m == null || !getMoveName(m).equals(name))
+            return false;
+
+        board.executeMove(m);
+        legalMovesIndexed = false;
+
+        return true;
+    }
+
     /**
      * If start can't move to destination, returns falls, otherwise moves the piece.
      *
@@ -309,7 +835,86 @@ private HashMap<ChessColor, Integer> colorHash;
             return false;
 
         board.executeMove(m);
+        legalMovesIndexed = false;
 
         return true;
     }
+
+    /**
+     * Holds the evaluation parameters of the file given with the system property "chess.evalparams", read when the first
+     * model is created.
+     */
+    private static class StartupParameters {
+        private static final int[] PARAMETERS = read();
+
+        /**
+         * Reads the parameter file.
+         *
+         * @return the parameters, null if no file is given or it can't be used
+         */
+        private static int[] read() {
+            String path = System.getProperty("chess.evalparams");
+            if (path == null)
+                return null;
+
+            try {
+                return EvaluationParameters.read(Paths.get(path));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not load evaluation parameters: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Holds the neural network of the weights file given with the system property "chess.nnue", read when the first
+     * model is created.
+     */
+    private static class StartupNetwork {
+        private static final Network NETWORK = load();
+
+        /**
+         * Reads the weights file.
+         *
+         * @return the network, null if no file is given or it can't be used
+         */
+        private static Network load() {
+            String path = System.getProperty("chess.nnue");
+            if (path == null)
+                return null;
+
+            try {
+                return Network.load(Paths.get(path));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not load neural network: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Holds the endgame tablebases of the directory given with the system property "chess.syzygy", opened when the
+     * first model is created.
+     */
+    private static class StartupTablebase {
+        private static final Tablebase TABLEBASE = open();
+
+        /**
+         * Opens the directory.
+         *
+         * @return the tablebases, null if no directory is given or it can't be used
+         */
+        private static Tablebase open() {
+            String path = System.getProperty("chess.syzygy");
+            if (path == null)
+                return null;
+
+            try {
+                return new Tablebase(Paths.get(path), 64);
+            } catch (IOException e) {
+                System.err.println("Could not open tablebases: " + e.getMessage());
+                return null;
+            }
+        }
+    }
 }
\ No newline at end of file
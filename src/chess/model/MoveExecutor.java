@@ -27,6 +27,9 @@ public class MoveExecutor {
      * @param move the move to execute
      */
     public void executeMove(Move move) {
+        if (board.getNetworkAccumulator() != null)
+            board.getNetworkAccumulator().push();
+
         // 50 and 75 move rule
         if (move.getPiece().getType() == PieceType.PAWN || move.getTarget() != null)
             board.setNoPawnMoveOrCaptureCounter(0);
@@ -92,7 +95,14 @@ public class MoveExecutor {
      * @param move the move to reverse
      */
     public void reverseMove(Move move) {
-        board.setNoPawnMoveOrCaptureCounter(move.getNoPawnMoveOrCaptureCounter() - 1);
+        // the accumulators before the move are still on the stack, so the tile changes don't need to update them
+        NetworkAccumulator networkAccumulator = board.getNetworkAccumulator();
+        if (networkAccumulator != null) {
+            networkAccumulator.pop();
+            networkAccumulator.setTracking(false);
+        }
+
+        board.setNoPawnMoveOrCaptureCounter(move.getNoPawnMoveOrCaptureCounter());
 
         if (board.getTile(move.getDestination()).getType() == PieceType.KING) {
             if (move.getStart() - move.getDestination() == 2)
@@ -147,5 +157,8 @@ public class MoveExecutor {
         moveHistory.removeMoveFromHistory(move);
 
         board.changeWhosTurn();
+
+        if (networkAccumulator != null)
+            networkAccumulator.setTracking(true);
     }
 }
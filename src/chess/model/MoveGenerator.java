@@ -47,6 +47,31 @@ public class MoveGenerator {
         initEnPassant();
     }
 
+    /**
+     * Creates a move generator for a copied board. The castling and en passant lookup tables are shared.
+     *
+     * @param board       the copied Board object
+     * @param moveHistory the history of the copied board
+     * @param other       the move generator of the original board
+     */
+    public MoveGenerator(Board board, MoveHistory moveHistory, MoveGenerator other) {
+        this.board = board;
+        this.moveHistory = moveHistory;
+        colorHash = other.colorHash;
+
+        castleKingStart = other.castleKingStart;
+        longCastleRookStart = other.longCastleRookStart;
+        longCastleRookDestination = other.longCastleRookDestination;
+        shortCastleRookStart = other.shortCastleRookStart;
+        shortCasteRookDestination = other.shortCasteRookDestination;
+        longCastleEmptyTiles = other.longCastleEmptyTiles;
+        shortCastleEmptyTiles = other.shortCastleEmptyTiles;
+        longCastleKingDestination = other.longCastleKingDestination;
+        shortCastleKingDestination = other.shortCastleKingDestination;
+        whoCanEnPassant = other.whoCanEnPassant;
+        enPassantDestinationTile = other.enPassantDestinationTile;
+    }
+
     /**
      * Creates the lookup variables for castling detection.
      */
@@ -115,11 +140,11 @@ public class MoveGenerator {
                 whoCanEnPassant[i][1] = -1;
             } else {
                 whoCanEnPassant[i][0] = i - 1;
-                whoCanEnPassant[i][1] = 1 + 1;
+                whoCanEnPassant[i][1] = i + 1;
             }
             enPassantDestinationTile[i] = i - 8;
         }
-        for (int i = 32; i < 39; i++) {
+        for (int i = 32; i < 40; i++) {
             // white pawn can get captured
             if (board.getColumn(i) == 0) {
                 whoCanEnPassant[i][0] = i + 1;
@@ -129,7 +154,7 @@ public class MoveGenerator {
                 whoCanEnPassant[i][1] = -1;
             } else {
                 whoCanEnPassant[i][0] = i - 1;
-                whoCanEnPassant[i][1] = 1 + 1;
+                whoCanEnPassant[i][1] = i + 1;
             }
             enPassantDestinationTile[i] = i + 8;
         }
@@ -195,6 +220,16 @@ public class MoveGenerator {
         return threats;
     }
 
+    /**
+     * Returns true if the king of the player whose turn it is is under attack.
+     * Uses the threats of the last call of findMovesAndCaptures.
+     *
+     * @return true if the king is in check
+     */
+    public boolean isKingInCheck() {
+        return threats[board.getKing(board.getWhosTurn()).getTile()];
+    }
+
     /**
      * Generates castling moves.
      *
@@ -208,10 +243,8 @@ public class MoveGenerator {
             return;
 
         // long castling
-        if (longCastleRookStart(color) && longCastleEmptyTiles(color)) {
+        if (longCastleRookStart(color) && longCastleEmptyTiles(color))
             moves.add(new Move(castleKingStart[color], longCastleKingDestination[color], board.getTile(castleKingStart[color]), null, board.getNoPawnMoveOrCaptureCounter()));
-            return;
-        }
 
         //short castling
         if (shortCastleRookStart(color) && shortCastleEmptyTiles(color))
@@ -243,12 +276,13 @@ public class MoveGenerator {
 
     /**
      * Checks if tile needed to be empty for long castling are empty.
+     * The first tile next to the rook only has to be empty, the king does not cross it.
      *
      * @param color the color to move
      * @return      true if tiles are empty
      */
     private boolean longCastleEmptyTiles(int color) {
-        return !threats[longCastleEmptyTiles[color][0]] && !threats[longCastleEmptyTiles[color][1]] && !threats[longCastleEmptyTiles[color][2]]
+        return !threats[longCastleEmptyTiles[color][1]] && !threats[longCastleEmptyTiles[color][2]]
                 && board.isTileEmpty(longCastleEmptyTiles[color][0]) && board.isTileEmpty(longCastleEmptyTiles[color][1]) && board.isTileEmpty(longCastleEmptyTiles[color][2]);
     }
 
@@ -284,7 +318,7 @@ public class MoveGenerator {
 
         Move move = moveHistory.getMoveHistory().get(moveHistory.getMoveHistory().size() - 1);
 
-        if (move.getPiece().getType() == PieceType.PAWN && Math.abs(move.getStart() - move.getDestination()) == 16)
+        if (move.getPiece().getType() == PieceType.PAWN && Math.abs(move.getStart() - move.getDestination()) == 16) {
             if (whoCanEnPassant[move.getDestination()][0] != -1
                     && !board.isTileEmpty(whoCanEnPassant[move.getDestination()][0])
                     && board.getTile(whoCanEnPassant[move.getDestination()][0]).getType() == PieceType.PAWN
@@ -303,6 +337,7 @@ public class MoveGenerator {
                         enPassantDestinationTile[move.getDestination()],
                         board.getTile(whoCanEnPassant[move.getDestination()][1]), board.getTile(move.getDestination()), board.getNoPawnMoveOrCaptureCounter()
                 ));
+        }
     }
 
     /**
@@ -322,9 +357,11 @@ public class MoveGenerator {
             for (var m : moveList) {
                 board.executeMove(m);
 
+                // threats of the player whose turn it is after the move
                 boolean[] threats = new boolean[64];
-                for (int i = 0; i < board.getPieceList().get(1).size(); i++)
-                    board.getPieceList().get(1).get(i).generateThreats(threats);
+                int color = colorHash.get(board.getWhosTurn());
+                for (int i = 0; i < board.getPieceList().get(color).size(); i++)
+                    board.getPieceList().get(color).get(i).generateThreats(threats);
 
                 if (threats[board.getKing(board.getWhosTurn() == ChessColor.WHITE ? ChessColor.BLACK : ChessColor.WHITE).getTile()])
                     if (cm == 0) movesToRemove.add(m);
@@ -0,0 +1,165 @@
+package chess.model;
+
+import chess.controller.ChessColor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The weights of an efficiently updatable neural network (NNUE) for the evaluation.
+ * <p>
+ * The network has 768 inputs (own and opponent piece type on each tile, seen from the player to move),
+ * a hidden layer of two accumulators with 16 bit weights, one for each perspective, and one output.
+ * The accumulators are updated with each move by the NetworkAccumulator of the board, so an evaluation only needs
+ * the output layer: the clipped accumulator of the player to move and of the opponent times the output weights.
+ * <p>
+ * Weights file, little endian: "NNUE", version (int 1), hidden size (int, multiple of 16),
+ * feature weights (768 rows of hidden size shorts), feature biases (hidden size shorts),
+ * output weights (2 * hidden size shorts, player to move first) and the output bias (int).
+ * A feature is (color * 6 + piece type) * 64 + tile, color 0 is the player of the perspective and
+ * tile 0 is A1 from the view of that player.
+ */
+public class Network {
+    public static final int FEATURES = 768;
+    public static final int VERSION = 1;
+    // quantisation of the accumulator and the output weights, and centipawns per output unit
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+    // the output is clamped below the tablebase and mate scores, so the search never mistakes it for one of them
+    public static final int MAX_SCORE = Engine.TABLEBASE_WIN_SCORE - 2 * Engine.MAX_PLY - 1;
+
+    private static final EvaluationKernels KERNELS = EvaluationKernels.get();
+
+    private int hiddenSize;
+    private short[] featureWeights;
+    private short[] featureBiases;
+    private short[] outputWeights;
+    private int outputBias;
+
+    /**
+     * Receives and sets the weights. The dot products of the output layer are summed in an int, so the output weights
+     * of each accumulator may add up to at most Integer.MAX_VALUE / QA in absolute value.
+     *
+     * @param hiddenSize     the number of values of one accumulator
+     * @param featureWeights the weights of the inputs, one row of hiddenSize values per feature
+     * @param featureBiases  the biases of the accumulators
+     * @param outputWeights  the output weights for the player to move, followed by the ones for the opponent
+     * @param outputBias     the bias of the output
+     * @throws IllegalArgumentException if the sizes don't match or the output layer could overflow
+     */
+    public Network(int hiddenSize, short[] featureWeights, short[] featureBiases, short[] outputWeights, int outputBias) {
+        if (hiddenSize <= 0 || hiddenSize % 16 != 0 || featureWeights.length != FEATURES * hiddenSize
+                || featureBiases.length != hiddenSize || outputWeights.length != 2 * hiddenSize)
+            throw new IllegalArgumentException("Network weights don't match hidden size " + hiddenSize);
+
+        for (int offset = 0; offset < outputWeights.length; offset += hiddenSize) {
+            long largestDot = 0;
+
+            for (int i = offset; i < offset + hiddenSize; i++)
+                largestDot += (long) QA * Math.abs(outputWeights[i]);
+
+            if (largestDot > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Output weights of the network are too large, the output layer could overflow");
+        }
+
+        this.hiddenSize = hiddenSize;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Reads the weights from a file.
+     *
+     * @param file the weights file
+     * @return     the network
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the file is no valid weights file
+     */
+    public static Network load(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < 12 || buffer.get() != 'N' || buffer.get() != 'N' || buffer.get() != 'U' || buffer.get() != 'E')
+            throw new IllegalArgumentException("No NNUE weights file: " + file);
+
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported NNUE version " + version + ", expected " + VERSION);
+
+        int hiddenSize = buffer.getInt();
+        if (hiddenSize <= 0 || hiddenSize > 4096 || buffer.remaining() != (long) (FEATURES + 3) * hiddenSize * 2 + 4)
+            throw new IllegalArgumentException("Wrong size of NNUE weights file: " + file);
+
+        short[] featureWeights = new short[FEATURES * hiddenSize];
+        short[] featureBiases = new short[hiddenSize];
+        short[] outputWeights = new short[2 * hiddenSize];
+
+        buffer.asShortBuffer().get(featureWeights).get(featureBiases).get(outputWeights);
+        buffer.position(buffer.position() + (featureWeights.length + featureBiases.length + outputWeights.length) * 2);
+
+        return new Network(hiddenSize, featureWeights, featureBiases, outputWeights, buffer.getInt());
+    }
+
+    /**
+     * Returns the number of values of one accumulator.
+     *
+     * @return the hidden size
+     */
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    /**
+     * Returns the biases, the start value of every accumulator.
+     *
+     * @return the biases of the accumulators
+     */
+    public short[] getFeatureBiases() {
+        return featureBiases;
+    }
+
+    /**
+     * Adds the weights of a piece on a tile to an accumulator.
+     *
+     * @param accumulator the accumulators
+     * @param offset      the start of the accumulator to change
+     * @param feature     the feature of the piece from the view of the accumulator
+     */
+    public void addFeature(short[] accumulator, int offset, int feature) {
+        KERNELS.add(accumulator, offset, featureWeights, feature * hiddenSize, hiddenSize);
+    }
+
+    /**
+     * Subtracts the weights of a piece on a tile from an accumulator.
+     *
+     * @param accumulator the accumulators
+     * @param offset      the start of the accumulator to change
+     * @param feature     the feature of the piece from the view of the accumulator
+     */
+    public void subtractFeature(short[] accumulator, int offset, int feature) {
+        KERNELS.subtract(accumulator, offset, featureWeights, feature * hiddenSize, hiddenSize);
+    }
+
+    /**
+     * Computes the output of the network, limited to -MAX_SCORE..MAX_SCORE.
+     *
+     * @param accumulator    the accumulators
+     * @param ownOffset      the start of the accumulator of the player to move
+     * @param opponentOffset the start of the accumulator of the opponent
+     * @param whosTurn       the color of the player to move
+     * @return               the score from the view of white
+     */
+    public int evaluate(short[] accumulator, int ownOffset, int opponentOffset, ChessColor whosTurn) {
+        long output = outputBias
+                + KERNELS.clippedDot(accumulator, ownOffset, outputWeights, 0, hiddenSize, QA)
+                + KERNELS.clippedDot(accumulator, opponentOffset, outputWeights, hiddenSize, hiddenSize, QA);
+        int score = (int) Math.max(-MAX_SCORE, Math.min(MAX_SCORE, output * SCALE / (QA * QB)));
+
+        return whosTurn == ChessColor.WHITE ? score : -score;
+    }
+}
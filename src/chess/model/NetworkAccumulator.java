@@ -0,0 +1,135 @@
+package chess.model;
+
+import chess.controller.ChessColor;
+
+import java.util.Arrays;
+
+/**
+ * The hidden layer of the Network for the position of a board, one accumulator per perspective.
+ * Executing a move pushes a copy of the accumulators that the changed tiles then update, reversing it pops the copy,
+ * so taking back a move costs nothing. While a move is reversed, tracking is turned off.
+ */
+public class NetworkAccumulator {
+    private Network network;
+    private int hiddenSize;
+    private short[] stack;
+    private int top;
+    private boolean tracking;
+
+    /**
+     * Creates the accumulators for an empty board.
+     *
+     * @param network the network
+     */
+    public NetworkAccumulator(Network network) {
+        this.network = network;
+        hiddenSize = network.getHiddenSize();
+        stack = new short[64 * 2 * hiddenSize];
+        tracking = true;
+
+        reset();
+    }
+
+    /**
+     * Returns the network of the accumulators.
+     *
+     * @return the network
+     */
+    public Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * Clears the stack and sets the accumulators to the biases, as for an empty board.
+     */
+    public void reset() {
+        top = 0;
+        System.arraycopy(network.getFeatureBiases(), 0, stack, 0, hiddenSize);
+        System.arraycopy(network.getFeatureBiases(), 0, stack, hiddenSize, hiddenSize);
+    }
+
+    /**
+     * Sets the accumulators from all active pieces of a board.
+     *
+     * @param board the board
+     */
+    public void refresh(Board board) {
+        reset();
+
+        for (var list : board.getPieceList())
+            for (var piece : list)
+                if (piece.isActive())
+                    update(piece, piece.getTile(), true);
+    }
+
+    /**
+     * Copies the current accumulators before a move changes them.
+     */
+    public void push() {
+        int size = 2 * hiddenSize;
+
+        if ((top + 2) * size > stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+
+        System.arraycopy(stack, top * size, stack, (top + 1) * size, size);
+        top++;
+    }
+
+    /**
+     * Returns to the accumulators before the last move.
+     */
+    public void pop() {
+        top--;
+    }
+
+    /**
+     * Turns the updates of tile changes on or off.
+     *
+     * @param tracking false while a move is reversed
+     */
+    public void setTracking(boolean tracking) {
+        this.tracking = tracking;
+    }
+
+    /**
+     * Adds or removes a piece on a tile, if tracking is on.
+     *
+     * @param piece the piece
+     * @param index the index of the tile
+     * @param add   true if the piece is placed, false if it is removed
+     */
+    public void update(Piece piece, int index, boolean add) {
+        if (!tracking)
+            return;
+
+        int type = piece.getType().ordinal();
+        int white = piece.getColor() == ChessColor.WHITE ? 0 : 1;
+        // tile 0 is A8, the white view needs A1 first
+        int whiteFeature = (white * 6 + type) * 64 + (index ^ 56);
+        int blackFeature = ((1 - white) * 6 + type) * 64 + index;
+        int offset = top * 2 * hiddenSize;
+
+        if (add) {
+            network.addFeature(stack, offset, whiteFeature);
+            network.addFeature(stack, offset + hiddenSize, blackFeature);
+        } else {
+            network.subtractFeature(stack, offset, whiteFeature);
+            network.subtractFeature(stack, offset + hiddenSize, blackFeature);
+        }
+    }
+
+    /**
+     * Returns the output of the network for the current accumulators.
+     *
+     * @param whosTurn the color of the player to move
+     * @return         the score from the view of white
+     */
+    public int evaluate(ChessColor whosTurn) {
+        int offset = top * 2 * hiddenSize;
+
+        if (whosTurn == ChessColor.WHITE)
+            return network.evaluate(stack, offset, offset + hiddenSize, whosTurn);
+
+        return network.evaluate(stack, offset + hiddenSize, offset, whosTurn);
+    }
+}
@@ -0,0 +1,89 @@
+package chess.model;
+
+/**
+ * A hash table for the pawn structure, keyed on the Zobrist hash of the pawns only.
+ * Pawns rarely move compared to the other pieces, so almost every evaluation finds its pawn structure here.
+ * Score and passed pawns are packed into one long, stored together with key xor entry like in the PerftTable,
+ * so the table can be shared by several threads without locks.
+ */
+public class PawnHashTable {
+    public static final long NOT_FOUND = -1;
+
+    private long[] checks;
+    private long[] entries;
+    private int mask;
+
+    /**
+     * Creates a table with the largest power of two number of entries that fits into the given size.
+     *
+     * @param kilobytes the size of the table in kilobytes
+     */
+    public PawnHashTable(int kilobytes) {
+        long size = Math.max(1, (long) kilobytes * 1024 / 16);
+        int entryCount = Integer.highestOneBit((int) Math.min(size, 1 << 30));
+
+        checks = new long[entryCount];
+        entries = new long[entryCount];
+        mask = entryCount - 1;
+    }
+
+    /**
+     * Returns the stored entry of a pawn structure, or NOT_FOUND if it is not in the table.
+     *
+     * @param pawnKey the Zobrist hash of the pawns
+     * @return        the packed entry, NOT_FOUND if not found
+     */
+    public long get(long pawnKey) {
+        int index = (int) pawnKey & mask;
+        long entry = entries[index];
+
+        return (checks[index] ^ entry) == pawnKey ? entry : NOT_FOUND;
+    }
+
+    /**
+     * Stores the entry of a pawn structure, replacing the previous entry.
+     *
+     * @param pawnKey the Zobrist hash of the pawns
+     * @param entry   the packed entry
+     */
+    public void put(long pawnKey, long entry) {
+        int index = (int) pawnKey & mask;
+
+        entries[index] = entry;
+        checks[index] = pawnKey ^ entry;
+    }
+
+    /**
+     * Packs the score and the passed pawns into one entry.
+     * Pawns can only stand on rows 2 to 7, so the passed pawns need 48 bits and the score gets the upper 16.
+     *
+     * @param score       the score of the pawn structure from the view of white
+     * @param passedPawns the passed pawns of both colors, one bit per tile index
+     * @return            the packed entry
+     */
+    public static long pack(int score, long passedPawns) {
+        int clampedScore = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score));
+
+        return passedPawns >>> 8 & 0xFFFFFFFFFFFFL | (long) clampedScore << 48;
+    }
+
+    /**
+     * Returns the score of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return      the score of the pawn structure from the view of white
+     */
+    public static int getScore(long entry) {
+        return (int) (entry >> 48);
+    }
+
+    /**
+     * Returns the passed pawns of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return      the passed pawns of both colors, one bit per tile index
+     */
+    public static long getPassedPawns(long entry) {
+        return (entry & 0xFFFFFFFFFFFFL) << 8;
+    }
+}
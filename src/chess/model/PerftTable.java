@@ -0,0 +1,67 @@
+package chess.model;
+
+/**
+ * A hash table for perft results, keyed on the Zobrist hash of the position and the remaining depth.
+ * The table can be shared by several threads without locks: an entry is stored as key xor count together with the count,
+ * so an entry mixed from two concurrent writes doesn't match any key and is ignored.
+ */
+public class PerftTable {
+    private long[] checks;
+    private long[] counts;
+    private int mask;
+
+    /**
+     * Creates a table with the largest power of two number of entries that fits into the given size.
+     *
+     * @param megabytes the size of the table in megabytes
+     */
+    public PerftTable(int megabytes) {
+        long entries = Math.max(1, (long) megabytes * 1024 * 1024 / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+
+        checks = new long[size];
+        counts = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the stored number of leaf nodes, or -1 if the position is not in the table.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param depth the remaining depth
+     * @return      the number of leaf nodes, -1 if not found
+     */
+    public long get(long key, int depth) {
+        long depthKey = getDepthKey(key, depth);
+        int index = (int) depthKey & mask;
+        long count = counts[index];
+
+        return (checks[index] ^ count) == depthKey ? count : -1;
+    }
+
+    /**
+     * Stores the number of leaf nodes of a position, replacing the previous entry.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param depth the remaining depth
+     * @param count the number of leaf nodes
+     */
+    public void put(long key, int depth, long count) {
+        long depthKey = getDepthKey(key, depth);
+        int index = (int) depthKey & mask;
+
+        counts[index] = count;
+        checks[index] = depthKey ^ count;
+    }
+
+    /**
+     * Mixes the depth into the key, so the same position at different depths uses different entries.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param depth the remaining depth
+     * @return      the combined key
+     */
+    private long getDepthKey(long key, int depth) {
+        return key ^ depth * 0x9E3779B97F4A7C15L;
+    }
+}
@@ -33,6 +33,17 @@ public abstract class Piece {
         moveCounter = 0;
     }
 
+    /**
+     * Takes over the tile, the state and the move counter of a piece of another board.
+     *
+     * @param other the piece to copy
+     */
+    public void copyState(Piece other) {
+        tile = other.tile;
+        isActive = other.isActive;
+        moveCounter = other.moveCounter;
+    }
+
     /**
      * Generate captures and add true for possible captures to boolean array.
      *
@@ -17,7 +17,7 @@ public class Queen extends Piece {
      */
     public Queen(Board board, ChessColor color, int tile) {
         super(board, color, PieceType.QUEEN, tile);
-        lookupTable = getBoard().getLookupTables().getQueen();
+        lookupTable = LookupTables.getQueen();
     }
 
     @Override
@@ -39,12 +39,12 @@ public class Queen extends Piece {
         int tile = lookupTable[getTile()][direction];
 
         while(tile > -1) {
-            if(!getBoard().isTileEmpty(tile)) {
-                if(!getBoard().isSameColor(getTile(), tile))
-                    captures[tile] = true;
+            if(!getBoard().isSameColor(getTile(), tile))
+                captures[tile] = true;
 
+            if(!getBoard().isTileEmpty(tile))
                 break;
-            }
+
             tile = lookupTable[tile][direction];
         }
     }
@@ -17,7 +17,7 @@ public class Rook extends Piece {
      */
     public Rook(Board board, ChessColor color, int tile) {
         super(board, color, PieceType.ROOK, tile);
-        lookupTable = getBoard().getLookupTables().getRook();
+        lookupTable = LookupTables.getRook();
     }
 
     @Override
@@ -35,12 +35,12 @@ public class Rook extends Piece {
         int tile = lookupTable[getTile()][dir];
 
         while(tile > -1) {
-            if(!getBoard().isTileEmpty(tile))
-                if(!getBoard().isSameColor(getTile(), tile)) {
-                    captures[tile] = true;
+            if(!getBoard().isSameColor(getTile(), tile))
+                captures[tile] = true;
 
+            if(!getBoard().isTileEmpty(tile))
                 break;
-            }
+
             tile = lookupTable[tile][dir];
         }
     }
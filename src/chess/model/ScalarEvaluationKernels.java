@@ -0,0 +1,39 @@
+package chess.model;
+
+/**
+ * The dense loops of the evaluation in plain Java.
+ */
+public class ScalarEvaluationKernels implements EvaluationKernels {
+
+    @Override
+    public int gatherSum(int[] table, int[] indices) {
+        int sum = 0;
+
+        for (var index : indices)
+            sum += table[index];
+
+        return sum;
+    }
+
+    @Override
+    public void add(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length) {
+        for (int i = 0; i < length; i++)
+            accumulator[accumulatorOffset + i] += weights[weightOffset + i];
+    }
+
+    @Override
+    public void subtract(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length) {
+        for (int i = 0; i < length; i++)
+            accumulator[accumulatorOffset + i] -= weights[weightOffset + i];
+    }
+
+    @Override
+    public int clippedDot(short[] accumulator, int accumulatorOffset, short[] weights, int weightOffset, int length, int max) {
+        int sum = 0;
+
+        for (int i = 0; i < length; i++)
+            sum += Math.max(0, Math.min(max, accumulator[accumulatorOffset + i])) * weights[weightOffset + i];
+
+        return sum;
+    }
+}
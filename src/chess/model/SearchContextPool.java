@@ -0,0 +1,146 @@
+package chess.model;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps models for short searches, so a request does not pay for a new board, move generator and engine.
+ * The models are copies of a template and share its evaluation weights and caches. They are warmed by a first search,
+ * which allocates the principal variation arrays, and reset by copying a position into them, which reuses the arrays
+ * and pieces of the board. The move lists are still created by every search.
+ * Can be used by many threads. When the pool is empty, a new model is created, so borrowing never blocks.
+ */
+public class SearchContextPool {
+    private Model template;
+    private int capacity;
+    private ConcurrentLinkedDeque<Model> idle;
+    private AtomicInteger idleCount;
+    private AtomicLong created;
+
+    /**
+     * Creates and warms the models.
+     *
+     * @param template the model the contexts are copied from
+     * @param capacity the number of idle models kept, usually one per worker thread or more
+     */
+    public SearchContextPool(Model template, int capacity) {
+        this.template = template;
+        this.capacity = capacity;
+
+        idle = new ConcurrentLinkedDeque<>();
+        idleCount = new AtomicInteger();
+        created = new AtomicLong();
+
+        for (int i = 0; i < capacity; i++)
+            release(createContext());
+    }
+
+    /**
+     * Creates a model and searches the template position once, so the first borrower does not allocate anything.
+     *
+     * @return the new model
+     */
+    private Model createContext() {
+        created.incrementAndGet();
+
+        Model context = new Model(template);
+        context.getEngine().setDepth(1);
+        context.getEngine().findBestMove();
+
+        return context;
+    }
+
+    /**
+     * Borrows a model with the position of another model.
+     *
+     * @param position the model with the position, for example a running game
+     * @return         the model, to be returned with release
+     */
+    public Model borrow(Model position) {
+        Model context = take();
+        context.copyPosition(position);
+
+        return context;
+    }
+
+    /**
+     * Borrows a model with the position of a FEN string after the given moves.
+     *
+     * @param fen   the FEN string of the start position
+     * @param moves the moves played from there in coordinate notation, for example "e2e4"
+     * @return      the model, to be returned with release
+     * @throws IllegalArgumentException if the FEN is invalid or a move is illegal
+     */
+    public Model borrow(String fen, String... moves) {
+        Model context = take();
+
+        try {
+            context.loadFen(fen);
+
+            for (var move : moves)
+                if (!context.playMove(move))
+                    throw new IllegalArgumentException("Illegal move " + move);
+        } catch (IllegalArgumentException e) {
+            release(context);
+            throw e;
+        }
+
+        return context;
+    }
+
+    /**
+     * Returns a borrowed model. The search limits are reset to those of the template. The model must not be used
+     * anymore, a search that could still be running on it has to be finished first.
+     *
+     * @param context the borrowed model
+     */
+    public void release(Model context) {
+        Engine engine = context.getEngine();
+        engine.setDepth(template.getEngine().getDepth());
+        engine.setNodeLimit(0);
+        engine.setMultiPv(1);
+        engine.setSearchListener(null);
+
+        // more returned models than the capacity are left to the garbage collector
+        if (idleCount.incrementAndGet() <= capacity)
+            idle.push(context);
+        else
+            idleCount.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of models waiting to be borrowed.
+     *
+     * @return the number of idle models
+     */
+    public int getIdle() {
+        return idleCount.get();
+    }
+
+    /**
+     * Returns the number of models created, including those of the initial warm up.
+     *
+     * @return the number of created models
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * Takes the most recently returned model, which is the most likely to still be in the CPU caches,
+     * or creates one if the pool is empty.
+     *
+     * @return the model
+     */
+    private Model take() {
+        Model context = idle.poll();
+
+        if (context == null)
+            return createContext();
+
+        idleCount.decrementAndGet();
+
+        return context;
+    }
+}
@@ -0,0 +1,16 @@
+package chess.model;
+
+import java.util.ArrayList;
+
+/**
+ * Gets informed about the progress of a search.
+ */
+public interface SearchListener {
+
+    /**
+     * Called by the searching thread after each completed iteration.
+     *
+     * @param lines the lines of the iteration, the best move first
+     */
+    void iterationCompleted(ArrayList<SearchResult> lines);
+}
@@ -0,0 +1,76 @@
+package chess.model;
+
+import java.util.ArrayList;
+
+/**
+ * The outcome of a search: the best move, its score, the expected continuation and the effort spent.
+ */
+public class SearchResult {
+    private Move bestMove;
+    private int score;
+    private ArrayList<Move> principalVariation;
+    private long nodes;
+    private int depth;
+
+    /**
+     * Receives and sets all information of the search.
+     *
+     * @param bestMove           the best move, null if there is no legal move
+     * @param score              the score of the best move from the view of white
+     * @param principalVariation the expected continuation, starting with the best move
+     * @param nodes              the number of searched positions
+     * @param depth              the depth of the last completed iteration
+     */
+    public SearchResult(Move bestMove, int score, ArrayList<Move> principalVariation, long nodes, int depth) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.principalVariation = principalVariation;
+        this.nodes = nodes;
+        this.depth = depth;
+    }
+
+    /**
+     * Returns the best move, null if there is no legal move.
+     *
+     * @return the best move
+     */
+    public Move getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the score of the best move from the view of white.
+     *
+     * @return the score of the best move
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the expected continuation, starting with the best move.
+     *
+     * @return the principal variation
+     */
+    public ArrayList<Move> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    /**
+     * Returns the number of searched positions.
+     *
+     * @return the number of searched positions
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the depth of the last completed iteration.
+     *
+     * @return the depth of the search
+     */
+    public int getDepth() {
+        return depth;
+    }
+}
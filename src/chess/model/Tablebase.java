@@ -0,0 +1,1155 @@
+package chess.model;
+
+import chess.controller.ChessColor;
+import chess.controller.PieceType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Probes Syzygy endgame tablebases (WDL and DTZ) stored in a local directory.
+ * The table files are memory mapped when first needed. Only a bounded number of mappings is kept open,
+ * the least recently used one gets dropped when the limit is reached.
+ * Files larger than 2 GB can't be mapped into a single buffer and are ignored.
+ */
+public class Tablebase {
+    public static final int WDL_LOSS = -2;
+    public static final int WDL_BLESSED_LOSS = -1;
+    public static final int WDL_DRAW = 0;
+    public static final int WDL_CURSED_WIN = 1;
+    public static final int WDL_WIN = 2;
+    public static final int PROBE_FAILED = Integer.MIN_VALUE;
+
+    private static final int FAIL = 0;
+    private static final int OK = 1;
+    private static final int CHANGE_STM = -1;
+    private static final int ZEROING_BEST_MOVE = 2;
+    // larger than every distance to zeroing, separates the groups of root moves
+    private static final int MAX_RANK = 1 << 16;
+
+    private static final int FLAG_STM = 1;
+    private static final int FLAG_MAPPED = 2;
+    private static final int FLAG_WIN_PLIES = 4;
+    private static final int FLAG_LOSS_PLIES = 8;
+    private static final int FLAG_WIDE = 16;
+    private static final int FLAG_SINGLE_VALUE = 128;
+
+    private static final int[] WDL_MAGIC = { 0x71, 0xE8, 0x23, 0x5D };
+    private static final int[] DTZ_MAGIC = { 0xD7, 0x66, 0x0C, 0xA5 };
+    private static final int[] WDL_TO_MAP = { 1, 3, 0, 2, 0 };
+    private static final String PIECE_LETTERS = "KQRBNP";
+    private static final PieceType[] LETTER_TYPES = { PieceType.KING, PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT, PieceType.PAWN };
+
+    private static final long[][] BINOMIAL = new long[6][64];
+    private static final int[] MAP_B1H1H7 = new int[64];
+    private static final int[] MAP_A1D1D4 = new int[64];
+    private static final int[][] MAP_KK = new int[10][64];
+    private static final int[] MAP_PAWNS = new int[64];
+    private static final int[][] LEAD_PAWN_IDX = new int[6][64];
+    private static final int[][] LEAD_PAWNS_SIZE = new int[6][4];
+
+    static {
+        initIndexTables();
+    }
+
+    private Path directory;
+    private int maxOpenFiles;
+    private int maxPieces;
+    private Set<String> wdlFiles;
+    private Set<String> dtzFiles;
+    private LinkedHashMap<String, Table> openTables;
+    private HashSet<String> failedFiles;
+
+    /**
+     * Scans the directory for table files. No file gets opened yet. The found files don't change afterwards,
+     * so the instance can be shared by searches on many threads.
+     *
+     * @param directory    the directory with the .rtbw and .rtbz files
+     * @param maxOpenFiles the maximum number of files that are kept memory mapped at the same time
+     * @throws IOException if the directory can't be read
+     */
+    public Tablebase(Path directory, int maxOpenFiles) throws IOException {
+        this.directory = directory;
+        this.maxOpenFiles = maxOpenFiles;
+
+        HashSet<String> wdlFiles = new HashSet<>();
+        HashSet<String> dtzFiles = new HashSet<>();
+        failedFiles = new HashSet<>();
+        openTables = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Table> eldest) {
+                // the mapping itself is released once the buffer gets garbage collected
+                return size() > Tablebase.this.maxOpenFiles;
+            }
+        };
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (var file : stream) {
+                String name = file.getFileName().toString();
+
+                if (name.endsWith(".rtbw"))
+                    wdlFiles.add(name.substring(0, name.length() - 5));
+                else if (name.endsWith(".rtbz"))
+                    dtzFiles.add(name.substring(0, name.length() - 5));
+                else
+                    continue;
+
+                maxPieces = Math.max(maxPieces, name.length() - 6);
+            }
+        }
+
+        // read without locking by every probe
+        this.wdlFiles = Set.copyOf(wdlFiles);
+        this.dtzFiles = Set.copyOf(dtzFiles);
+    }
+
+    /**
+     * Returns the highest number of pieces (kings included) for which a table was found.
+     *
+     * @return the highest number of pieces of the available tables, 0 if there are none
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Returns the win/draw/loss value of the position for the side to move.
+     * Castling rights are not stored in the tables, so positions where castling is still possible must not be probed.
+     *
+     * @param board         the board with the position
+     * @param moveGenerator the move generator of the board, used to resolve captures and en passant
+     * @return              one of the WDL constants, PROBE_FAILED if there is no table for the position
+     */
+    public int probeWdl(Board board, MoveGenerator moveGenerator) {
+        ProbeState state = new ProbeState();
+        int wdl = search(board, moveGenerator, state, false);
+
+        return state.result == FAIL ? PROBE_FAILED : wdl;
+    }
+
+    /**
+     * Returns the distance to zeroing (plies until the next capture or pawn move with optimal play) for the side to move.
+     * The value is positive for a win, negative for a loss and 0 for a draw.
+     * Wins and losses that can't be forced within the 50-move rule have an absolute value greater than 100.
+     *
+     * @param board         the board with the position
+     * @param moveGenerator the move generator of the board
+     * @return              the distance to zeroing, PROBE_FAILED if there is no table for the position
+     */
+    public int probeDtz(Board board, MoveGenerator moveGenerator) {
+        ProbeState state = new ProbeState();
+        int dtz = probeDtz(board, moveGenerator, state);
+
+        return state.result == FAIL ? PROBE_FAILED : dtz;
+    }
+
+    /**
+     * Returns the move with the best distance to zeroing: the fastest conversion of a win,
+     * any move keeping a draw, or the longest resistance when losing.
+     * Like the 50-move rule, the moves already played since the last capture or pawn move count: a win that can't be
+     * converted before the rule ends the game ranks below every win that can.
+     *
+     * @param board         the board with the position
+     * @param moveGenerator the move generator of the board
+     * @return              the best move, null if the position can't be probed
+     */
+    public Move probeRoot(Board board, MoveGenerator moveGenerator) {
+        ProbeState state = new ProbeState();
+        ArrayList<Move> rootMoves = generateLegalMoves(moveGenerator);
+        int counter = board.getNoPawnMoveOrCaptureCounter();
+        Move bestMove = null;
+        int bestRank = Integer.MIN_VALUE;
+
+        for (var move : rootMoves) {
+            boolean zeroing = move.getTarget() != null || move.getPiece().getType() == PieceType.PAWN;
+            int dtz;
+
+            state.result = OK;
+            board.executeMove(move);
+
+            if (zeroing)
+                dtz = dtzBeforeZeroing(-search(board, moveGenerator, state, false));
+            else {
+                dtz = -probeDtz(board, moveGenerator, state);
+                dtz = dtz > 0 ? dtz + 1 : dtz < 0 ? dtz - 1 : dtz;
+            }
+
+            // a mating move gets a distance of 1
+            if (dtz == 2 && isMate(board, moveGenerator))
+                dtz = 1;
+
+            board.reverseMove(move);
+
+            if (state.result == FAIL)
+                return null;
+
+            int rank;
+            if (dtz > 0)
+                rank = dtz + counter <= 99 ? 3 * MAX_RANK - dtz : MAX_RANK - dtz - counter;
+            else
+                rank = dtz < 0 ? -MAX_RANK - dtz : 0;
+
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = move;
+            }
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * Resolves captures (and pawn moves if requested) before looking up the table,
+     * since the tables don't contain en passant rights and store "don't care" values where a capture is the best move.
+     *
+     * @param board             the board with the position
+     * @param moveGenerator     the move generator of the board
+     * @param state             the state of the probe
+     * @param checkZeroingMoves true if pawn moves should be searched as well
+     * @return                  the WDL value for the side to move
+     */
+    private int search(Board board, MoveGenerator moveGenerator, ProbeState state, boolean checkZeroingMoves) {
+        int value;
+        int bestValue = WDL_LOSS;
+        int moveCount = 0;
+        ArrayList<Move> legalMoves = generateLegalMoves(moveGenerator);
+
+        for (var move : legalMoves) {
+            if (move.getTarget() == null && (!checkZeroingMoves || move.getPiece().getType() != PieceType.PAWN))
+                continue;
+
+            moveCount++;
+
+            board.executeMove(move);
+            value = -search(board, moveGenerator, state, false);
+            board.reverseMove(move);
+
+            if (state.result == FAIL)
+                return WDL_DRAW;
+
+            if (value > bestValue) {
+                bestValue = value;
+
+                if (value >= WDL_WIN) {
+                    state.result = ZEROING_BEST_MOVE;
+                    return value;
+                }
+            }
+        }
+
+        // if every legal move was searched the stored value is not needed (and could be wrong)
+        boolean noMoreMoves = moveCount > 0 && moveCount == legalMoves.size();
+
+        if (noMoreMoves)
+            value = bestValue;
+        else {
+            value = probeTable(board, state, WDL_DRAW, false);
+            if (state.result == FAIL)
+                return WDL_DRAW;
+        }
+
+        if (bestValue >= value) {
+            state.result = bestValue > WDL_DRAW || noMoreMoves ? ZEROING_BEST_MOVE : OK;
+            return bestValue;
+        }
+
+        state.result = OK;
+        return value;
+    }
+
+    /**
+     * Returns the distance to zeroing, see the public method.
+     *
+     * @param board         the board with the position
+     * @param moveGenerator the move generator of the board
+     * @param state         the state of the probe
+     * @return              the distance to zeroing
+     */
+    private int probeDtz(Board board, MoveGenerator moveGenerator, ProbeState state) {
+        state.result = OK;
+        int wdl = search(board, moveGenerator, state, true);
+
+        if (state.result == FAIL || wdl == WDL_DRAW)
+            return 0;
+
+        if (state.result == ZEROING_BEST_MOVE)
+            return dtzBeforeZeroing(wdl);
+
+        int dtz = probeTable(board, state, wdl, true);
+
+        if (state.result == FAIL)
+            return 0;
+
+        if (state.result != CHANGE_STM)
+            return (dtz + (wdl == WDL_BLESSED_LOSS || wdl == WDL_CURSED_WIN ? 100 : 0)) * Integer.signum(wdl);
+
+        // the table only stores the other side to move, so do a one ply search
+        int minDtz = 0xFFFF;
+
+        for (var move : generateLegalMoves(moveGenerator)) {
+            boolean zeroing = move.getTarget() != null || move.getPiece().getType() == PieceType.PAWN;
+
+            board.executeMove(move);
+
+            dtz = zeroing ? -dtzBeforeZeroing(search(board, moveGenerator, state, false)) : -probeDtz(board, moveGenerator, state);
+
+            if (dtz == 1 && isMate(board, moveGenerator))
+                minDtz = 1;
+
+            if (!zeroing)
+                dtz += Integer.signum(dtz);
+
+            if (dtz < minDtz && Integer.signum(dtz) == Integer.signum(wdl))
+                minDtz = dtz;
+
+            board.reverseMove(move);
+
+            if (state.result == FAIL)
+                return 0;
+        }
+
+        return minDtz == 0xFFFF ? -1 : minDtz;
+    }
+
+    /**
+     * Returns the distance to zeroing of the move that leads to a zeroing position with the given WDL value.
+     *
+     * @param wdl the WDL value
+     * @return    the distance to zeroing
+     */
+    private int dtzBeforeZeroing(int wdl) {
+        switch (wdl) {
+            case WDL_WIN: return 1;
+            case WDL_CURSED_WIN: return 101;
+            case WDL_BLESSED_LOSS: return -101;
+            case WDL_LOSS: return -1;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Generates the legal moves of the side to move, captures first.
+     *
+     * @param moveGenerator the move generator of the board
+     * @return              a new list with the legal moves
+     */
+    private ArrayList<Move> generateLegalMoves(MoveGenerator moveGenerator) {
+        moveGenerator.findMovesAndCaptures();
+        moveGenerator.removeInvalidMoves();
+
+        ArrayList<Move> legalMoves = new ArrayList<>(moveGenerator.getLastGeneratedCaptures());
+        legalMoves.addAll(moveGenerator.getLastGeneratedMoves());
+
+        return legalMoves;
+    }
+
+    /**
+     * Returns true if the side to move is checkmated.
+     *
+     * @param board         the board with the position
+     * @param moveGenerator the move generator of the board
+     * @return              true if the side to move is checkmated
+     */
+    private boolean isMate(Board board, MoveGenerator moveGenerator) {
+        return generateLegalMoves(moveGenerator).isEmpty() && moveGenerator.isKingInCheck();
+    }
+
+    /**
+     * Looks up the table of the position and decodes the stored value.
+     *
+     * @param board the board with the position
+     * @param state the state of the probe, set to FAIL if there is no table and to CHANGE_STM if a DTZ table stores the other side
+     * @param wdl   the WDL value of the position, only needed for DTZ tables
+     * @param dtz   true to probe the DTZ table, false for the WDL table
+     * @return      the WDL value or the distance to zeroing
+     */
+    private int probeTable(Board board, ProbeState state, int wdl, boolean dtz) {
+        int[] codes = new int[64];
+        int pieceCount = 0;
+
+        // Syzygy squares count from A1 = 0 to H8 = 63, the board from A8 = 0 to H1 = 63
+        for (int s = 0; s < 64; s++) {
+            Piece piece = board.getTile(s ^ 56);
+
+            if (piece != null) {
+                codes[s] = piece.getType().ordinal() + 1 + (piece.getColor() == ChessColor.BLACK ? 8 : 0);
+                pieceCount++;
+            }
+        }
+
+        if (pieceCount > 7) {
+            state.result = FAIL;
+            return 0;
+        }
+
+        String whiteFirst = materialSignature(codes, 0) + "v" + materialSignature(codes, 8);
+        String blackFirst = materialSignature(codes, 8) + "v" + materialSignature(codes, 0);
+        boolean blackStronger = false;
+        String name = whiteFirst;
+
+        if (!(dtz ? dtzFiles : wdlFiles).contains(whiteFirst)) {
+            name = blackFirst;
+            blackStronger = true;
+        }
+
+        Table table = getTable(name, dtz);
+        if (table == null) {
+            state.result = FAIL;
+            return 0;
+        }
+
+        boolean symmetricBlackToMove = table.symmetric && board.getWhosTurn() == ChessColor.BLACK;
+        boolean flip = symmetricBlackToMove || blackStronger;
+        int flipColor = flip ? 8 : 0;
+        int flipSquares = flip ? 56 : 0;
+        int stm = (flip ? 1 : 0) ^ (board.getWhosTurn() == ChessColor.BLACK ? 1 : 0);
+
+        int[] squares = new int[7];
+        int[] pieces = new int[7];
+        int size = 0;
+        int leadPawnsCount = 0;
+        int tbFile = 0;
+        long leadPawns = 0;
+
+        // with pawns, the leading pawn is the one nearest to the edge and among those the one with the lowest rank
+        if (table.hasPawns) {
+            int leadPiece = table.get(0, 0).pieces[0] ^ flipColor;
+
+            for (int s = 0; s < 64; s++)
+                if (codes[s] == leadPiece) {
+                    leadPawns |= 1L << s;
+                    squares[size++] = s ^ flipSquares;
+                }
+
+            leadPawnsCount = size;
+
+            int lead = 0;
+            for (int i = 1; i < leadPawnsCount; i++)
+                if (MAP_PAWNS[squares[i]] > MAP_PAWNS[squares[lead]])
+                    lead = i;
+            swap(squares, 0, lead);
+
+            tbFile = Math.min(squares[0] & 7, 7 - (squares[0] & 7));
+        }
+
+        if (dtz && !table.hasStm(stm, tbFile)) {
+            state.result = CHANGE_STM;
+            return 0;
+        }
+
+        for (int s = 0; s < 64; s++)
+            if (codes[s] != 0 && (leadPawns & 1L << s) == 0) {
+                squares[size] = s ^ flipSquares;
+                pieces[size++] = codes[s] ^ flipColor;
+            }
+
+        PairsData d = table.get(stm, tbFile);
+
+        // order the pieces like the sequence stored in the table
+        for (int i = leadPawnsCount; i < size - 1; i++)
+            for (int j = i + 1; j < size; j++)
+                if (d.pieces[i] == pieces[j]) {
+                    swap(pieces, i, j);
+                    swap(squares, i, j);
+                    break;
+                }
+
+        // the leading piece has to be on the files A-D
+        if ((squares[0] & 7) > 3)
+            for (int i = 0; i < size; i++)
+                squares[i] ^= 7;
+
+        long idx;
+
+        if (table.hasPawns) {
+            idx = LEAD_PAWN_IDX[leadPawnsCount][squares[0]];
+
+            sortByPawnMap(squares, 1, leadPawnsCount);
+            for (int i = 1; i < leadPawnsCount; i++)
+                idx += BINOMIAL[i][MAP_PAWNS[squares[i]]];
+        } else {
+            // without pawns the leading piece is also mapped below rank 5 and below the A1-H8 diagonal
+            if (squares[0] >> 3 > 3)
+                for (int i = 0; i < size; i++)
+                    squares[i] ^= 56;
+
+            for (int i = 0; i < d.groupLen[0]; i++) {
+                if (offDiagonal(squares[i]) == 0)
+                    continue;
+
+                if (offDiagonal(squares[i]) > 0)
+                    for (int j = i; j < size; j++)
+                        squares[j] = ((squares[j] >> 3) | (squares[j] << 3)) & 63;
+                break;
+            }
+
+            if (table.hasUniquePieces) {
+                int adjust1 = squares[1] > squares[0] ? 1 : 0;
+                int adjust2 = (squares[2] > squares[0] ? 1 : 0) + (squares[2] > squares[1] ? 1 : 0);
+
+                if (offDiagonal(squares[0]) != 0)
+                    idx = (MAP_A1D1D4[squares[0]] * 63L + (squares[1] - adjust1)) * 62 + squares[2] - adjust2;
+                else if (offDiagonal(squares[1]) != 0)
+                    idx = (6 * 63L + (squares[0] >> 3) * 28 + MAP_B1H1H7[squares[1]]) * 62 + squares[2] - adjust2;
+                else if (offDiagonal(squares[2]) != 0)
+                    idx = 6 * 63 * 62 + 4 * 28 * 62 + (squares[0] >> 3) * 7 * 28 + ((squares[1] >> 3) - adjust1) * 28 + MAP_B1H1H7[squares[2]];
+                else
+                    idx = 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + (squares[0] >> 3) * 7 * 6 + ((squares[1] >> 3) - adjust1) * 6 + ((squares[2] >> 3) - adjust2);
+            } else
+                idx = MAP_KK[MAP_A1D1D4[squares[0]]][squares[1]];
+        }
+
+        idx *= d.groupIdx[0];
+
+        // encode the remaining groups, squares of earlier groups are skipped
+        int groupStart = d.groupLen[0];
+        boolean remainingPawns = table.hasPawns && table.pawnCount[1] > 0;
+
+        for (int next = 1; d.groupLen[next] != 0; next++) {
+            Arrays.sort(squares, groupStart, groupStart + d.groupLen[next]);
+            long n = 0;
+
+            for (int i = 0; i < d.groupLen[next]; i++) {
+                int adjust = 0;
+                for (int j = 0; j < groupStart; j++)
+                    if (squares[groupStart + i] > squares[j])
+                        adjust++;
+
+                n += BINOMIAL[i + 1][squares[groupStart + i] - adjust - (remainingPawns ? 8 : 0)];
+            }
+
+            remainingPawns = false;
+            idx += n * d.groupIdx[next];
+            groupStart += d.groupLen[next];
+        }
+
+        int value = decompressPairs(table, d, idx);
+
+        return dtz ? mapDtz(table, tbFile, value, wdl) : value - 2;
+    }
+
+    /**
+     * Converts a decoded DTZ value to plies.
+     *
+     * @param table  the DTZ table
+     * @param tbFile the file of the leading pawn, 0 without pawns
+     * @param value  the decoded value
+     * @param wdl    the WDL value of the position
+     * @return       the distance to zeroing in plies
+     */
+    private int mapDtz(Table table, int tbFile, int value, int wdl) {
+        PairsData d = table.get(0, tbFile);
+
+        if ((d.flags & FLAG_MAPPED) != 0) {
+            if ((d.flags & FLAG_WIDE) != 0)
+                value = table.u16(table.map + 2 * (d.mapIdx[WDL_TO_MAP[wdl + 2]] + value));
+            else
+                value = table.u8(table.map + d.mapIdx[WDL_TO_MAP[wdl + 2]] + value);
+        }
+
+        if (wdl == WDL_WIN && (d.flags & FLAG_WIN_PLIES) == 0 || wdl == WDL_LOSS && (d.flags & FLAG_LOSS_PLIES) == 0
+                || wdl == WDL_CURSED_WIN || wdl == WDL_BLESSED_LOSS)
+            value *= 2;
+
+        return value + 1;
+    }
+
+    /**
+     * Decodes the value at the index from the Huffman compressed blocks.
+     *
+     * @param table the table
+     * @param d     the pairs data of the side to move and file
+     * @param idx   the index of the position
+     * @return      the stored value
+     */
+    private int decompressPairs(Table table, PairsData d, long idx) {
+        if ((d.flags & FLAG_SINGLE_VALUE) != 0)
+            return d.minSymLen;
+
+        int k = (int) (idx / d.span);
+        int block = (int) table.u32(d.sparseIndex + 6 * k);
+        int offset = table.u16(d.sparseIndex + 6 * k + 4);
+        offset += (int) (idx % d.span - d.span / 2);
+
+        while (offset < 0)
+            offset += table.u16(d.blockLength + 2 * --block) + 1;
+
+        while (offset > table.u16(d.blockLength + 2 * block))
+            offset -= table.u16(d.blockLength + 2 * block++) + 1;
+
+        int ptr = (int) (d.data + (long) block * d.sizeofBlock);
+        long buf64 = Long.reverseBytes(table.buffer.getLong(ptr));
+        int buf64Size = 64;
+        int sym;
+        ptr += 8;
+
+        while (true) {
+            int len = 0;
+            while (Long.compareUnsigned(buf64, d.base64[len]) < 0)
+                len++;
+
+            sym = (int) ((buf64 - d.base64[len]) >>> (64 - len - d.minSymLen));
+            sym += table.u16(d.lowestSym + 2 * len);
+
+            if (offset < d.symlen[sym] + 1)
+                break;
+
+            offset -= d.symlen[sym] + 1;
+            len += d.minSymLen;
+            buf64 <<= len;
+            buf64Size -= len;
+
+            if (buf64Size <= 32) {
+                buf64Size += 32;
+                buf64 |= (Integer.reverseBytes(table.buffer.getInt(ptr)) & 0xFFFFFFFFL) << (64 - buf64Size);
+                ptr += 4;
+            }
+        }
+
+        while (d.symlen[sym] != 0) {
+            int left = table.left(d, sym);
+
+            if (offset < d.symlen[left] + 1)
+                sym = left;
+            else {
+                offset -= d.symlen[left] + 1;
+                sym = table.right(d, sym);
+            }
+        }
+
+        return table.left(d, sym);
+    }
+
+    /**
+     * Returns the table with the given name, maps and parses the file if it is not open yet.
+     *
+     * @param name the material signature, for example "KRvK"
+     * @param dtz  true for the DTZ table, false for the WDL table
+     * @return     the table, null if the file does not exist or is invalid
+     */
+    private Table getTable(String name, boolean dtz) {
+        if (!(dtz ? dtzFiles : wdlFiles).contains(name))
+            return null;
+
+        String fileName = name + (dtz ? ".rtbz" : ".rtbw");
+
+        synchronized (openTables) {
+            Table table = openTables.get(fileName);
+            if (table != null || failedFiles.contains(fileName))
+                return table;
+
+            try (FileChannel channel = FileChannel.open(directory.resolve(fileName), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE)
+                    throw new IOException("file too large");
+
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+                table = new Table(name, buffer, dtz);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not load tablebase file " + fileName + ": " + e.getMessage());
+                failedFiles.add(fileName);
+                return null;
+            }
+
+            openTables.put(fileName, table);
+            return table;
+        }
+    }
+
+    /**
+     * Returns the pieces of one color in the order used for file names, for example "KRP".
+     *
+     * @param codes the piece codes of the squares
+     * @param color 0 for white, 8 for black
+     * @return      the pieces of the color
+     */
+    private String materialSignature(int[] codes, int color) {
+        int[] count = new int[16];
+        for (var code : codes)
+            count[code]++;
+
+        StringBuilder signature = new StringBuilder();
+        for (int i = 0; i < PIECE_LETTERS.length(); i++)
+            for (int n = 0; n < count[LETTER_TYPES[i].ordinal() + 1 + color]; n++)
+                signature.append(PIECE_LETTERS.charAt(i));
+
+        return signature.toString();
+    }
+
+    /**
+     * Returns how far a square is above (positive) or below (negative) the A1-H8 diagonal.
+     *
+     * @param square the square, A1 = 0
+     * @return       rank minus file of the square
+     */
+    private static int offDiagonal(int square) {
+        return (square >> 3) - (square & 7);
+    }
+
+    /**
+     * Swaps two elements of an array.
+     *
+     * @param array the array
+     * @param i     the first index
+     * @param j     the second index
+     */
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    /**
+     * Sorts a range of pawn squares ascending by their pawn map value.
+     *
+     * @param squares the squares
+     * @param from    the first index, inclusive
+     * @param to      the last index, exclusive
+     */
+    private static void sortByPawnMap(int[] squares, int from, int to) {
+        for (int i = from + 1; i < to; i++)
+            for (int j = i; j > from && MAP_PAWNS[squares[j]] < MAP_PAWNS[squares[j - 1]]; j--)
+                swap(squares, j, j - 1);
+    }
+
+    /**
+     * Creates the lookup tables used to compute the index of a position.
+     */
+    private static void initIndexTables() {
+        int code = 0;
+        for (int s = 0; s < 64; s++)
+            if (offDiagonal(s) < 0)
+                MAP_B1H1H7[s] = code++;
+
+        // the triangle A1-D1-D4, squares on the diagonal come last
+        code = 0;
+        ArrayList<Integer> diagonal = new ArrayList<>();
+        for (int rank = 0; rank < 4; rank++)
+            for (int file = 0; file < 4; file++) {
+                int s = rank * 8 + file;
+
+                if (offDiagonal(s) < 0)
+                    MAP_A1D1D4[s] = code++;
+                else if (offDiagonal(s) == 0)
+                    diagonal.add(s);
+            }
+        for (var s : diagonal)
+            MAP_A1D1D4[s] = code++;
+
+        // the 462 legal positions of two kings with the first one in the triangle
+        code = 0;
+        ArrayList<int[]> bothOnDiagonal = new ArrayList<>();
+        for (int idx = 0; idx < 10; idx++)
+            for (int s1 = 0; s1 < 28; s1++)
+                if (MAP_A1D1D4[s1] == idx && (idx != 0 || s1 == 1))
+                    for (int s2 = 0; s2 < 64; s2++) {
+                        if (Math.abs((s1 >> 3) - (s2 >> 3)) <= 1 && Math.abs((s1 & 7) - (s2 & 7)) <= 1)
+                            continue;
+                        else if (offDiagonal(s1) == 0 && offDiagonal(s2) > 0)
+                            continue;
+                        else if (offDiagonal(s1) == 0 && offDiagonal(s2) == 0)
+                            bothOnDiagonal.add(new int[]{ idx, s2 });
+                        else
+                            MAP_KK[idx][s2] = code++;
+                    }
+        for (var p : bothOnDiagonal)
+            MAP_KK[p[0]][p[1]] = code++;
+
+        BINOMIAL[0][0] = 1;
+        for (int n = 1; n < 64; n++)
+            for (int k = 0; k < 6 && k <= n; k++)
+                BINOMIAL[k][n] = (k > 0 ? BINOMIAL[k - 1][n - 1] : 0) + (k < n ? BINOMIAL[k][n - 1] : 0);
+
+        // the pawn map is highest for the squares nearest to the edge and on the lowest rank
+        int availableSquares = 47;
+        for (int leadPawnsCount = 1; leadPawnsCount <= 5; leadPawnsCount++)
+            for (int file = 0; file < 4; file++) {
+                int idx = 0;
+
+                for (int rank = 1; rank < 7; rank++) {
+                    int s = rank * 8 + file;
+
+                    if (leadPawnsCount == 1) {
+                        MAP_PAWNS[s] = availableSquares--;
+                        MAP_PAWNS[s ^ 7] = availableSquares--;
+                    }
+
+                    LEAD_PAWN_IDX[leadPawnsCount][s] = idx;
+                    idx += BINOMIAL[leadPawnsCount - 1][MAP_PAWNS[s]];
+                }
+
+                LEAD_PAWNS_SIZE[leadPawnsCount][file] = idx;
+            }
+    }
+
+    /**
+     * The result of a probe, passed through the recursive search.
+     */
+    private static final class ProbeState {
+        private int result = OK;
+    }
+
+    /**
+     * The decoding information for one side to move and one file of the leading pawn.
+     */
+    private static final class PairsData {
+        private int flags;
+        private int[] pieces = new int[7];
+        private int[] groupLen = new int[8];
+        private long[] groupIdx = new long[8];
+        private long sizeofBlock;
+        private long span;
+        private int sparseIndexSize;
+        private int blocksNum;
+        private int blockLengthSize;
+        private int maxSymLen;
+        private int minSymLen;
+        private int lowestSym;
+        private long[] base64;
+        private int[] symlen;
+        private int btree;
+        private int sparseIndex;
+        private int blockLength;
+        private int data;
+        private int[] mapIdx = new int[4];
+    }
+
+    /**
+     * A memory mapped table file. All offsets point into the buffer.
+     */
+    private static final class Table {
+        private ByteBuffer buffer;
+        private boolean dtz;
+        private int pieceCount;
+        private boolean hasPawns;
+        private boolean hasUniquePieces;
+        private boolean symmetric;
+        private int[] pawnCount = new int[2];
+        private PairsData[][] items = new PairsData[2][4];
+        private int map;
+
+        /**
+         * Reads the material from the name and parses the header of the file.
+         *
+         * @param name   the material signature, for example "KRPvKP"
+         * @param buffer the mapped file
+         * @param dtz    true if it is a DTZ table
+         */
+        private Table(String name, ByteBuffer buffer, boolean dtz) {
+            this.buffer = buffer;
+            this.dtz = dtz;
+
+            int[] magic = dtz ? DTZ_MAGIC : WDL_MAGIC;
+            for (int i = 0; i < 4; i++)
+                if (u8(i) != magic[i])
+                    throw new IllegalArgumentException("wrong magic number");
+
+            String white = name.substring(0, name.indexOf('v'));
+            String black = name.substring(name.indexOf('v') + 1);
+            int whitePawns = count(white, 'P');
+            int blackPawns = count(black, 'P');
+
+            pieceCount = white.length() + black.length();
+            hasPawns = whitePawns + blackPawns > 0;
+            symmetric = white.equals(black);
+
+            for (var side : new String[]{ white, black })
+                for (var letter : "QRBNP".toCharArray())
+                    if (count(side, letter) == 1)
+                        hasUniquePieces = true;
+
+            // the side with fewer pawns leads, since this compresses better
+            boolean whiteLeads = blackPawns == 0 || whitePawns > 0 && blackPawns >= whitePawns;
+            pawnCount[0] = whiteLeads ? whitePawns : blackPawns;
+            pawnCount[1] = whiteLeads ? blackPawns : whitePawns;
+
+            parse();
+        }
+
+        /**
+         * Returns how often a letter is in a String.
+         *
+         * @param s      the String
+         * @param letter the letter
+         * @return       the number of occurrences
+         */
+        private static int count(String s, char letter) {
+            int n = 0;
+            for (var c : s.toCharArray())
+                if (c == letter)
+                    n++;
+            return n;
+        }
+
+        /**
+         * Returns the pairs data for a side to move and file.
+         *
+         * @param stm  0 if the stronger side is to move, otherwise 1
+         * @param file the file of the leading pawn
+         * @return     the pairs data
+         */
+        private PairsData get(int stm, int file) {
+            return items[dtz ? 0 : stm][hasPawns ? file : 0];
+        }
+
+        /**
+         * Returns true if the DTZ table stores the given side to move.
+         *
+         * @param stm  0 if the stronger side is to move, otherwise 1
+         * @param file the file of the leading pawn
+         * @return     true if the side to move is stored
+         */
+        private boolean hasStm(int stm, int file) {
+            return (get(stm, file).flags & FLAG_STM) == stm || symmetric && !hasPawns;
+        }
+
+        /**
+         * Reads the piece order, the group sizes and the offsets of the compressed data.
+         */
+        private void parse() {
+            int sides = !dtz && !symmetric ? 2 : 1;
+            int maxFile = hasPawns ? 3 : 0;
+            boolean bothPawns = hasPawns && pawnCount[1] > 0;
+            int data = 5;   // magic number and flags
+
+            for (int f = 0; f <= maxFile; f++) {
+                for (int i = 0; i < sides; i++)
+                    items[i][f] = new PairsData();
+
+                int[][] order = {
+                        { u8(data) & 0xF, bothPawns ? u8(data + 1) & 0xF : 0xF },
+                        { u8(data) >> 4, bothPawns ? u8(data + 1) >> 4 : 0xF } };
+                data += bothPawns ? 2 : 1;
+
+                for (int k = 0; k < pieceCount; k++, data++)
+                    for (int i = 0; i < sides; i++)
+                        items[i][f].pieces[k] = i == 0 ? u8(data) & 0xF : u8(data) >> 4;
+
+                for (int i = 0; i < sides; i++)
+                    setGroups(items[i][f], order[i], f);
+            }
+
+            data += data & 1;
+
+            for (int f = 0; f <= maxFile; f++)
+                for (int i = 0; i < sides; i++)
+                    data = setSizes(items[i][f], data);
+
+            if (dtz)
+                data = setDtzMap(data, maxFile);
+
+            for (int f = 0; f <= maxFile; f++)
+                for (int i = 0; i < sides; i++) {
+                    items[i][f].sparseIndex = data;
+                    data += items[i][f].sparseIndexSize * 6;
+                }
+
+            for (int f = 0; f <= maxFile; f++)
+                for (int i = 0; i < sides; i++) {
+                    items[i][f].blockLength = data;
+                    data += items[i][f].blockLengthSize * 2;
+                }
+
+            for (int f = 0; f <= maxFile; f++)
+                for (int i = 0; i < sides; i++) {
+                    data = (data + 0x3F) & ~0x3F;
+                    items[i][f].data = data;
+                    data += (int) (items[i][f].blocksNum * items[i][f].sizeofBlock);
+                }
+        }
+
+        /**
+         * Splits the pieces into groups and computes the index multiplier of each group.
+         *
+         * @param d     the pairs data
+         * @param order the encoding order of the leading group and the remaining pawns
+         * @param file  the file of the leading pawn
+         */
+        private void setGroups(PairsData d, int[] order, int file) {
+            int n = 0;
+            int firstLen = hasPawns ? 0 : hasUniquePieces ? 3 : 2;
+            d.groupLen[n] = 1;
+
+            for (int i = 1; i < pieceCount; i++)
+                if (--firstLen > 0 || d.pieces[i] == d.pieces[i - 1])
+                    d.groupLen[n]++;
+                else
+                    d.groupLen[++n] = 1;
+            d.groupLen[++n] = 0;
+
+            boolean bothPawns = hasPawns && pawnCount[1] > 0;
+            int next = bothPawns ? 2 : 1;
+            int freeSquares = 64 - d.groupLen[0] - (bothPawns ? d.groupLen[1] : 0);
+            long idx = 1;
+
+            for (int k = 0; next < n || k == order[0] || k == order[1]; k++)
+                if (k == order[0]) {
+                    d.groupIdx[0] = idx;
+                    idx *= hasPawns ? LEAD_PAWNS_SIZE[d.groupLen[0]][file] : hasUniquePieces ? 31332 : 462;
+                } else if (k == order[1]) {
+                    d.groupIdx[1] = idx;
+                    idx *= BINOMIAL[d.groupLen[1]][48 - d.groupLen[0]];
+                } else {
+                    d.groupIdx[next] = idx;
+                    idx *= BINOMIAL[d.groupLen[next]][freeSquares];
+                    freeSquares -= d.groupLen[next++];
+                }
+
+            d.groupIdx[n] = idx;
+        }
+
+        /**
+         * Reads the block sizes and the Huffman code of the pairs data.
+         *
+         * @param d    the pairs data
+         * @param data the offset of the data
+         * @return     the offset after the data
+         */
+        private int setSizes(PairsData d, int data) {
+            d.flags = u8(data++);
+
+            if ((d.flags & FLAG_SINGLE_VALUE) != 0) {
+                d.minSymLen = u8(data++);
+                return data;
+            }
+
+            int n = 0;
+            while (d.groupLen[n] != 0)
+                n++;
+            long tbSize = d.groupIdx[n];
+
+            d.sizeofBlock = 1L << u8(data++);
+            d.span = 1L << u8(data++);
+            d.sparseIndexSize = (int) ((tbSize + d.span - 1) / d.span);
+            int padding = u8(data++);
+            d.blocksNum = (int) u32(data);
+            data += 4;
+            d.blockLengthSize = d.blocksNum + padding;
+            d.maxSymLen = u8(data++);
+            d.minSymLen = u8(data++);
+            d.lowestSym = data;
+
+            // longer codes have lower values, base64 holds the lowest code of each length, left aligned
+            d.base64 = new long[d.maxSymLen - d.minSymLen + 1];
+            for (int i = d.base64.length - 2; i >= 0; i--)
+                d.base64[i] = (d.base64[i + 1] + u16(d.lowestSym + 2 * i) - u16(d.lowestSym + 2 * (i + 1))) / 2;
+            for (int i = 0; i < d.base64.length; i++)
+                d.base64[i] <<= 64 - i - d.minSymLen;
+
+            data += d.base64.length * 2;
+            d.symlen = new int[u16(data)];
+            data += 2;
+            d.btree = data;
+
+            boolean[] visited = new boolean[d.symlen.length];
+            for (int sym = 0; sym < d.symlen.length; sym++)
+                if (!visited[sym])
+                    d.symlen[sym] = setSymlen(d, sym, visited);
+
+            return data + d.symlen.length * 3 + (d.symlen.length & 1);
+        }
+
+        /**
+         * Computes the number of values a symbol expands to, minus one.
+         *
+         * @param d       the pairs data
+         * @param sym     the symbol
+         * @param visited the symbols already computed
+         * @return        the length of the symbol
+         */
+        private int setSymlen(PairsData d, int sym, boolean[] visited) {
+            visited[sym] = true;
+
+            int right = right(d, sym);
+            if (right == 0xFFF)
+                return 0;
+
+            int left = left(d, sym);
+            if (!visited[left])
+                d.symlen[left] = setSymlen(d, left, visited);
+            if (!visited[right])
+                d.symlen[right] = setSymlen(d, right, visited);
+
+            return d.symlen[left] + d.symlen[right] + 1;
+        }
+
+        /**
+         * Reads the maps that convert DTZ values to distances.
+         *
+         * @param data    the offset of the maps
+         * @param maxFile the last file with data
+         * @return        the offset after the maps
+         */
+        private int setDtzMap(int data, int maxFile) {
+            map = data;
+
+            for (int f = 0; f <= maxFile; f++) {
+                PairsData d = get(0, f);
+
+                if ((d.flags & FLAG_MAPPED) == 0)
+                    continue;
+
+                if ((d.flags & FLAG_WIDE) != 0) {
+                    data += data & 1;
+                    for (int i = 0; i < 4; i++) {
+                        d.mapIdx[i] = (data - map) / 2 + 1;
+                        data += 2 * u16(data) + 2;
+                    }
+                } else
+                    for (int i = 0; i < 4; i++) {
+                        d.mapIdx[i] = data - map + 1;
+                        data += u8(data) + 1;
+                    }
+            }
+
+            return data + (data & 1);
+        }
+
+        /**
+         * Returns the left child of a symbol in the symbol tree.
+         *
+         * @param d   the pairs data
+         * @param sym the symbol
+         * @return    the left child
+         */
+        private int left(PairsData d, int sym) {
+            int offset = d.btree + 3 * sym;
+            return ((u8(offset + 1) & 0xF) << 8) | u8(offset);
+        }
+
+        /**
+         * Returns the right child of a symbol in the symbol tree.
+         *
+         * @param d   the pairs data
+         * @param sym the symbol
+         * @return    the right child
+         */
+        private int right(PairsData d, int sym) {
+            int offset = d.btree + 3 * sym;
+            return (u8(offset + 2) << 4) | (u8(offset + 1) >> 4);
+        }
+
+        private int u8(int offset) {
+            return buffer.get(offset) & 0xFF;
+        }
+
+        private int u16(int offset) {
+            return buffer.getShort(offset) & 0xFFFF;
+        }
+
+        private long u32(int offset) {
+            return buffer.getInt(offset) & 0xFFFFFFFFL;
+        }
+    }
+}
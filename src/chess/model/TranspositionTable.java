@@ -0,0 +1,133 @@
+package chess.model;
+
+import java.util.Arrays;
+
+/**
+ * A hash table for the scores of searched positions, keyed on the Zobrist hash of the position.
+ * Score, remaining depth and the kind of bound are packed into one long, stored together with key xor entry
+ * like in the PawnHashTable, so the table can be shared by several threads without locks.
+ * The arrays are allocated before the first search, so creating a model for a short-lived tool stays cheap.
+ */
+public class TranspositionTable {
+    public static final long NOT_FOUND = -1;
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private long[] checks;
+    private long[] entries;
+    private int mask;
+    private int entryCount;
+
+    /**
+     * Creates a table with the largest power of two number of entries that fits into the given size.
+     * The memory is taken by allocate.
+     *
+     * @param megabytes the size of the table in megabytes
+     */
+    public TranspositionTable(int megabytes) {
+        long size = Math.max(1, (long) megabytes * 1024 * 1024 / 16);
+        entryCount = Integer.highestOneBit((int) Math.min(size, 1 << 30));
+    }
+
+    /**
+     * Creates an empty table with as many entries as another table, for a search that must not see its entries.
+     * The memory is taken by allocate.
+     *
+     * @param other the table to take the size from
+     */
+    public TranspositionTable(TranspositionTable other) {
+        entryCount = other.entryCount;
+    }
+
+    /**
+     * Allocates the entries if that was not done yet. Has to be called by every thread before it uses the table.
+     */
+    public synchronized void allocate() {
+        if (entries != null)
+            return;
+
+        checks = new long[entryCount];
+        entries = new long[entryCount];
+        mask = entryCount - 1;
+    }
+
+    /**
+     * Returns the stored entry of a position, or NOT_FOUND if it is not in the table.
+     *
+     * @param key the Zobrist hash of the position
+     * @return    the packed entry, NOT_FOUND if not found
+     */
+    public long get(long key) {
+        int index = (int) key & mask;
+        long entry = entries[index];
+
+        return (checks[index] ^ entry) == key ? entry : NOT_FOUND;
+    }
+
+    /**
+     * Stores the entry of a position, replacing the previous entry.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param entry the packed entry
+     */
+    public void put(long key, long entry) {
+        int index = (int) key & mask;
+
+        entries[index] = entry;
+        checks[index] = key ^ entry;
+    }
+
+    /**
+     * Removes all entries, for example before a new game.
+     */
+    public synchronized void clear() {
+        if (entries == null)
+            return;
+
+        Arrays.fill(checks, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * Packs score, depth and bound into one entry. The upper bits stay zero, so an entry is never NOT_FOUND.
+     *
+     * @param score the score from the view of white
+     * @param depth the remaining depth of the search below the position
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @return      the packed entry
+     */
+    public static long pack(int score, int depth, int bound) {
+        return score & 0xFFFFFFFFL | (long) (depth & 0xFF) << 32 | (long) bound << 40;
+    }
+
+    /**
+     * Returns the score of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return      the score from the view of white
+     */
+    public static int getScore(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Returns the depth of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return      the remaining depth of the search below the position
+     */
+    public static int getDepth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * Returns the kind of bound of a packed entry.
+     *
+     * @param entry the packed entry
+     * @return      EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int getBound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+}
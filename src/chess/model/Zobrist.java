@@ -0,0 +1,76 @@
+package chess.model;
+
+import chess.controller.ChessColor;
+
+import java.util.Random;
+
+/**
+ * Random keys to hash positions (Zobrist hashing).
+ * The keys are created once with a fixed seed, so every board of the JVM (and every run) hashes a position to the same value.
+ */
+public final class Zobrist {
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        Random random = new Random(0x5EEDC4E55L);
+
+        for (int i = 0; i < 12; i++)
+            for (int j = 0; j < 64; j++)
+                PIECE_KEYS[i][j] = random.nextLong();
+
+        // no castling rights must not change the key
+        for (int i = 1; i < 16; i++)
+            CASTLING_KEYS[i] = random.nextLong();
+
+        for (int i = 0; i < 8; i++)
+            EN_PASSANT_KEYS[i] = random.nextLong();
+
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key of a piece on a tile.
+     *
+     * @param piece the piece
+     * @param index the index of the tile
+     * @return      the key of the piece on the tile
+     */
+    public static long getPieceKey(Piece piece, int index) {
+        return PIECE_KEYS[piece.getType().ordinal() + (piece.getColor() == ChessColor.WHITE ? 0 : 6)][index];
+    }
+
+    /**
+     * Returns the key of a combination of castling rights.
+     *
+     * @param rights the castling rights as bit mask, 0 for none
+     * @return       the key of the castling rights
+     */
+    public static long getCastlingKey(int rights) {
+        return CASTLING_KEYS[rights];
+    }
+
+    /**
+     * Returns the key of an en passant column.
+     *
+     * @param column the column of the pawn that can be captured en passant
+     * @return       the key of the column
+     */
+    public static long getEnPassantKey(int column) {
+        return EN_PASSANT_KEYS[column];
+    }
+
+    /**
+     * Returns the key that is added when black is to move.
+     *
+     * @return the key for black to move
+     */
+    public static long getBlackToMoveKey() {
+        return BLACK_TO_MOVE_KEY;
+    }
+}
@@ -0,0 +1,146 @@
+package chess.view;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Paints the whole board in one component. Every tile only remembers its background and icon,
+ * changing them repaints just that tile instead of laying out 64 labels.
+ */
+class BoardPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int GAP = 1;
+
+    private Color[] backgrounds;
+    private ImageIcon[] icons;
+    private Image draggedImage;
+    private Rectangle draggedBounds;
+
+    /**
+     * Creates an empty board.
+     */
+    BoardPanel() {
+        backgrounds = new Color[64];
+        icons = new ImageIcon[64];
+    }
+
+    /**
+     * Sets the background of a tile and repaints it if it changed.
+     *
+     * @param index the index of the tile
+     * @param color the new color of the tile
+     */
+    void setTileBackground(int index, Color color) {
+        if (color.equals(backgrounds[index]))
+            return;
+
+        backgrounds[index] = color;
+        repaint(getTileBounds(index));
+    }
+
+    /**
+     * Sets the icon of a tile and repaints it if it changed.
+     *
+     * @param index the index of the tile
+     * @param icon  the new icon of the tile, null for none
+     */
+    void setTileIcon(int index, ImageIcon icon) {
+        if (icon == icons[index])
+            return;
+
+        icons[index] = icon;
+        repaint(getTileBounds(index));
+    }
+
+    /**
+     * Sets the image of the dragged piece and repaints the area it left and the area it covers now.
+     *
+     * @param image the image of the dragged piece, null for none
+     * @param x     the x-coordinate of the image
+     * @param y     the y-coordinate of the image
+     */
+    void setDraggedImage(Image image, int x, int y) {
+        if (draggedBounds != null)
+            repaint(draggedBounds);
+
+        draggedImage = image;
+        draggedBounds = image == null ? null : new Rectangle(x, y, getTileWidth(), getTileHeight());
+
+        if (draggedBounds != null)
+            repaint(draggedBounds);
+    }
+
+    /**
+     * Returns the width of a tile.
+     *
+     * @return the width of a tile in pixels
+     */
+    int getTileWidth() {
+        return Math.max(1, (getWidth() - 7 * GAP) / 8);
+    }
+
+    /**
+     * Returns the height of a tile.
+     *
+     * @return the height of a tile in pixels
+     */
+    int getTileHeight() {
+        return Math.max(1, (getHeight() - 7 * GAP) / 8);
+    }
+
+    /**
+     * Returns the index of the tile at the given point.
+     *
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return  the index of the tile, -1 if the point is outside of the board
+     */
+    int getTileIndex(int x, int y) {
+        int column = x / (getTileWidth() + GAP);
+        int row = y / (getTileHeight() + GAP);
+
+        if (x < 0 || y < 0 || column > 7 || row > 7)
+            return -1;
+
+        return column + row * 8;
+    }
+
+    /**
+     * Returns the area of a tile.
+     *
+     * @param index the index of the tile
+     * @return      the bounds of the tile
+     */
+    private Rectangle getTileBounds(int index) {
+        return new Rectangle(index % 8 * (getTileWidth() + GAP), index / 8 * (getTileHeight() + GAP), getTileWidth(), getTileHeight());
+    }
+
+    /**
+     * Paints the tiles inside of the clip, then the dragged piece on top.
+     *
+     * @param g the Graphics object
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        Rectangle clip = g.getClipBounds();
+
+        for (int i = 0; i < 64; i++) {
+            Rectangle bounds = getTileBounds(i);
+            if (clip != null && !clip.intersects(bounds))
+                continue;
+
+            if (backgrounds[i] != null) {
+                g.setColor(backgrounds[i]);
+                g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+            }
+
+            if (icons[i] != null)
+                g.drawImage(icons[i].getImage(), bounds.x, bounds.y + (bounds.height - icons[i].getIconHeight()) / 2, this);
+        }
+
+        if (draggedImage != null)
+            g.drawImage(draggedImage, draggedBounds.x, draggedBounds.y, this);
+    }
+}
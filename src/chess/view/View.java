@@ -13,11 +13,8 @@ import java.awt.event.*;
 public class View {
     private Controller controller;
     private JFrame frame;
-    private JLabel[] labels;
-    private JLabel[] labelsOverlay;
-    private JPanel panel;
-    private JPanel boardPanel;
-    private JPanel aboveBoardPanel;
+    private BoardPanel boardPanel;
+    private JLabel statusLabel;
 
 
     /**
@@ -29,22 +26,11 @@ public class View {
         this.controller = controller;
 
         frame = createFrame();
-        panel = createPanel();
-
         boardPanel = createBoardPanel();
-        labels = createTileLabels();
-        aboveBoardPanel = createAboveBoardPanel();
-
-        labelsOverlay = new JLabel[64];
-        for (int i = 0; i < 64; i++) {
-            labelsOverlay[i] = new JLabel();
-            labelsOverlay[i].setOpaque(false);
-            aboveBoardPanel.add(labelsOverlay[i]);
-        }
+        frame.add(boardPanel, BorderLayout.CENTER);
 
-        panel.add(aboveBoardPanel);
-        panel.add(boardPanel);
-        frame.add(panel, BorderLayout.CENTER);
+        statusLabel = new JLabel(" ");
+        frame.add(statusLabel, BorderLayout.SOUTH);
     }
 
     /**
@@ -68,180 +54,92 @@ public class View {
         f.setLocationRelativeTo(null);
         f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
-        f.addComponentListener(new ComponentAdapter() {
-            public void componentResized(ComponentEvent componentEvent) {
-                int newWidth = labels[0].getWidth();
-                int newHeight = labels[0].getHeight();
-                controller.rescaleIcons(newWidth, newHeight);
-            }
-        });
-
         return f;
     }
 
     /**
-     * Creates and returns a JPanel.
-     *
-     * @return created JPanel
-     */
-    private JPanel createPanel() {
-        JPanel p = new JPanel();
-
-        p.setLayout(new OverlayLayout(p));
-
-        return p;
-    }
-
-    /**
-     * Creates and returns an array of JLabel. Each JLabel represents a tile of the board.
-     *
-     * @return array of JLabel
-     */
-    private JLabel[] createTileLabels() {
-        JLabel[] l = new JLabel[64];
-
-        for (int i = 0; i < 64; i++) {
-            l[i] = new JLabel();
-
-            l[i].setOpaque(true);
-            boardPanel.add(l[i]);
-        }
-
-        return l;
-    }
-
-    /**
-     * Creates and returns a JPanel for the chess board.
-     *
-     * @return created JPanel
-     */
-    private JPanel createBoardPanel() {
-        JPanel bp = new JPanel();
-
-        bp.setLayout(new GridLayout(8, 8, 1, 1));
-        bp.setVisible(true);
-
-        return bp;
-    }
-
-    /**
-     * Checks which label was clicked and if valid, sends the coordinates to the Controller.
+     * Creates and returns the component that paints the board and the dragged piece.
+     * Adds Listeners for the Mouse and for the size.
      *
-     * @param e the MouseEvent
+     * @return the created BoardPanel
      */
-    private void setSelectedLabel(MouseEvent e) {
-        int x = -1;
-        int y;
+    private BoardPanel createBoardPanel() {
+        BoardPanel bp = new BoardPanel();
 
-        for (int i = 0; i < 8; i++)
-            if (e.getX() < labels[i].getX() + labels[i].getWidth()) {
-                x = i;
-                break;
+        bp.addComponentListener(new ComponentAdapter() {
+            public void componentResized(ComponentEvent componentEvent) {
+                controller.rescaleIcons(bp.getTileWidth(), bp.getTileHeight());
             }
-
-        if (x != -1)
-            for (int i = 0; i < 8; i++)
-                if (e.getY() < labels[i * 8].getY() + labels[i * 8].getHeight()) {
-                    y = i;
-                    controller.setSelectedPiece(x + y * 8);
-                    break;
-                }
-    }
-
-    /**
-     * Sends the coordinates where the selected piece should be displayed.
-     *
-     * @param e the MouseEvent
-     */
-    private void setSelectedCoordinates (MouseEvent e) {
-        int x = e.getX() - labelsOverlay[0].getWidth() / 2;
-        int y = e.getY() - labelsOverlay[0].getHeight() / 2;
-
-        controller.setSelectedPieceCoordinates(x, y);
-    }
-
-    /**
-     * Creates and returns a JPanel. It is used to display the selected piece.
-     * Adds Listeners for the Mouse.
-     *
-     * @return the created JPanel
-     */
-    private JPanel createAboveBoardPanel() {
-        JPanel abp = new JPanel() {
+        });
+        bp.addMouseListener(new MouseAdapter() {
             @Override
-            public void paintComponent(Graphics g) {
-                super.paintComponent(g);
-
-                if (controller.isAPieceSelected())
-                    g.drawImage(controller.getSelectedPieceIcon(), controller.getSelectedPieceDragX(), controller.getSelectedPieceDragY(), this);
-            }
-        };
+            public void mousePressed(MouseEvent e) {
+                int index = bp.getTileIndex(e.getX(), e.getY());
 
-        abp.setLayout(new GridLayout(8, 8, 1, 1));
-        abp.setVisible(true);
-        abp.setOpaque(false);
-        abp.addMouseListener(new MouseListener() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-            }
+                if (index != -1)
+                    controller.setSelectedPiece(index);
 
-            @Override
-            public void mousePressed(MouseEvent e) {
-                setSelectedLabel(e);
                 setSelectedCoordinates(e);
-
-                abp.repaint();
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
-                controller.deselectPiece(e.getX() / labelsOverlay[0].getWidth() +  e.getY() / labelsOverlay[0].getHeight() * 8);
-
-                abp.repaint();
-            }
-
-            @Override
-            public void mouseEntered(MouseEvent e) {
-            }
-
-            @Override
-            public void mouseExited(MouseEvent e) {
+                controller.deselectPiece(bp.getTileIndex(e.getX(), e.getY()));
+                bp.setDraggedImage(null, 0, 0);
             }
         });
-        abp.addMouseMotionListener(new MouseMotionListener() {
+        bp.addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
                 setSelectedCoordinates(e);
-
-                abp.repaint();
-            }
-
-            @Override
-            public void mouseMoved(MouseEvent e) {
             }
         });
 
-        return abp;
+        return bp;
+    }
+
+    /**
+     * Sends the coordinates where the selected piece should be displayed and moves its image there.
+     *
+     * @param e the MouseEvent
+     */
+    private void setSelectedCoordinates(MouseEvent e) {
+        int x = e.getX() - boardPanel.getTileWidth() / 2;
+        int y = e.getY() - boardPanel.getTileHeight() / 2;
+
+        controller.setSelectedPieceCoordinates(x, y);
+
+        if (controller.isAPieceSelected())
+            boardPanel.setDraggedImage(controller.getSelectedPieceIcon(), controller.getSelectedPieceDragX(), controller.getSelectedPieceDragY());
     }
 
     /**
-     * Sets the background of a tile.
+     * Sets the background of a tile. Only a changed tile gets repainted.
      *
      * @param index the index of the tile
      * @param color the new color of the tile
      */
     public void setBackground(int index, Color color) {
-        labels[index].setBackground(color);
+        boardPanel.setTileBackground(index, color);
     }
 
     /**
-     * Sets the icon of a tile.
+     * Sets the icon of a tile. Only a changed tile gets repainted.
      *
      * @param index the index of the tile
      * @param icon  the new icon of the tile
      */
     public void setIcon(int index, ImageIcon icon) {
-        labels[index].setIcon(icon);
+        boardPanel.setTileIcon(index, icon);
+    }
+
+    /**
+     * Sets the text of the status line below the board.
+     *
+     * @param text the new text
+     */
+    public void setStatus(String text) {
+        statusLabel.setText(text);
     }
 
     /**